@@ -0,0 +1,5 @@
+#!/bin/bash
+
+_CMD_MVN=`which mvn`
+
+$_CMD_MVN -B -q package
@@ -0,0 +1,5 @@
+#!/bin/bash
+
+_CMD_JAVA=`which java`;
+
+$_CMD_JAVA --add-modules jdk.incubator.vector -jar ./target/benchmarks.jar -prof gc "$@"
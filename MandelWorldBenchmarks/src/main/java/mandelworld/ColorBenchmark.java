@@ -0,0 +1,84 @@
+package mandelworld;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// The colour pass alone, from counts computed once per trial: the
+// canvas's palette lookup into the raster array against BufferedImage
+// setRGB, pixel by pixel as the drivers first did and a row at a time.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+@State(Scope.Thread)
+public class ColorBenchmark {
+
+    @Param({"960x540", "3840x2160"})
+    public String size;
+
+    @Param({"interior", "boundary", "exterior"})
+    public String view;
+
+    @Param({"1024"})
+    public int maxIterations;
+
+    private int width, height;
+    private int[][] counts;
+    private int[] palette, row;
+    private PixelCanvas canvas;
+    private BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] parts = size.split("x");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+        double[] dims = Viewport.parse(view).dims();
+        palette = Viewport.palette(maxIterations);
+        double[] re = new double[width], im = new double[width];
+        MandelKernel.fillAxis(re, 0, width, dims[0], dims[1], width);
+        counts = new int[height][width];
+        for (int y = 0; y < height; ++y) {
+            Arrays.fill(im, dims[2] + ((double) y / height) * (dims[3] - dims[2]));
+            MandelKernel.generateIterations(MandelKernel.Engine.PRIMITIVE, re, im, counts[y], width, maxIterations);
+        }
+        row = new int[width];
+        canvas = new PixelCanvas(width, height, palette);
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Benchmark
+    public PixelCanvas canvasSetRow() {
+        for (int y = 0; y < height; ++y) {
+            canvas.setRow(0, y, counts[y], width);
+        }
+        return canvas;
+    }
+
+    @Benchmark
+    public BufferedImage imageSetRGB() {
+        for (int y = 0; y < height; ++y) {
+            int[] line = counts[y];
+            for (int x = 0; x < width; ++x) {
+                image.setRGB(x, y, palette[line[x]]);
+            }
+        }
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage imageSetRGBRow() {
+        for (int y = 0; y < height; ++y) {
+            int[] line = counts[y];
+            for (int x = 0; x < width; ++x) {
+                row[x] = palette[line[x]];
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+}
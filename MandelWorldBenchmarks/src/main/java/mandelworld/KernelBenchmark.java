@@ -0,0 +1,81 @@
+package mandelworld;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// The iteration engines on a SIDE x SIDE grid of each viewport, pixel by
+// pixel through generateIteration and row by row through
+// generateIterations, which is what the vector engine needs. Scores are
+// per pixel. Comparing double-double with primitive on the same view gives
+// the cost of the extra precision; only the deep view needs it.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+@State(Scope.Thread)
+public class KernelBenchmark {
+
+    static final int SIDE = 64, PIXELS = SIDE * SIDE;
+
+    @Param({"interior", "boundary", "exterior", "deep"})
+    public String view;
+
+    @Param({"primitive", "complex", "vector", "double-double", "perturbation"})
+    public String engine;
+
+    @Param({"1024"})
+    public int maxIterations;
+
+    @Param({"false"})
+    public boolean interiorChecks;
+
+    private MandelKernel.Engine kernel;
+    private final double[][] re = new double[SIDE][SIDE], im = new double[SIDE][SIDE];
+    private final int[] line = new int[SIDE];
+
+    @Setup
+    public void setup() {
+        Viewport viewport = Viewport.parse(view);
+        kernel = MandelKernel.Engine.parse(engine);
+        if (kernel == MandelKernel.Engine.PRIMITIVE && !engine.equals("primitive")) {
+            throw new IllegalStateException("engine " + engine + " is unavailable in this JVM");
+        }
+        MandelKernel.setInteriorChecks(interiorChecks);
+        double[] dims = viewport.dims();
+        if (kernel == MandelKernel.Engine.DOUBLEDOUBLE) {
+            dims = DoubleDoubleKernel.install(viewport.rect(), dims);
+        } else if (kernel == MandelKernel.Engine.PERTURBATION) {
+            dims = PerturbationReference.install(viewport.rect(), dims, SIDE, SIDE, maxIterations);
+        }
+        for (int y = 0; y < SIDE; ++y) {
+            MandelKernel.fillAxis(re[y], 0, SIDE, dims[0], dims[1], SIDE);
+            Arrays.fill(im[y], dims[2] + ((double) y / SIDE) * (dims[3] - dims[2]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int perPixel() {
+        int sum = 0;
+        for (int y = 0; y < SIDE; ++y) {
+            for (int x = 0; x < SIDE; ++x) {
+                sum += MandelKernel.generateIteration(kernel, re[y][x], im[y][x], maxIterations);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int perLine() {
+        int sum = 0;
+        for (int y = 0; y < SIDE; ++y) {
+            MandelKernel.generateIterations(kernel, re[y], im[y], line, SIDE, maxIterations);
+            sum += line[SIDE - 1];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,134 @@
+package mandelworld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// One full render of a viewport per operation through each driver's own
+// worker code: WorkerStatic strips dealt round-robin to threads,
+// WorkerDynamic strips through an executor, and the custom driver's
+// render() through ThreadPoolCustom. All three split the image into
+// threads * granularity strips. threads counts computing threads here;
+// the pool drivers' -t also counts the main thread, which only waits.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class SchedulerBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    @Param({"1", "8"})
+    public int granularity;
+
+    @Param({"960x540"})
+    public String size;
+
+    @Param({"boundary"})
+    public String view;
+
+    @Param({"primitive"})
+    public String engine;
+
+    @Param({"1024"})
+    public int maxIterations;
+
+    @Param({"blocking"})
+    public String queue;
+
+    private int width, height, strips;
+    private ExecutorService executor;
+    private ThreadPoolCustom pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] parts = size.split("x");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+        strips = threads * granularity;
+        double[] dims = Viewport.parse(view).dims();
+        MandelKernel.Engine kernel = MandelKernel.Engine.parse(engine);
+        if (kernel.isOffset()) {
+            throw new IllegalArgumentException("offset engines need an installed centre: " + engine);
+        }
+        int[] palette = Viewport.palette(maxIterations);
+
+        MandelWorldStatic.dims = dims;
+        MandelWorldStatic.engine = kernel;
+        MandelWorldStatic.mirror = RealAxisMirror.NONE;
+        MandelWorldStatic.canvas = new PixelCanvas(width, height, palette);
+        MandelWorldStatic.threadTimes = new long[threads];
+
+        MandelWorldDynamic.WIDTH = width;
+        MandelWorldDynamic.HEIGHT = height;
+        MandelWorldDynamic.MAX_ITERATIONS = maxIterations;
+        MandelWorldDynamic.RE_START_POINT = dims[0];
+        MandelWorldDynamic.RE_END_POINT = dims[1];
+        MandelWorldDynamic.IM_START_POINT = dims[2];
+        MandelWorldDynamic.IM_END_POINT = dims[3];
+        MandelWorldDynamic.engine = kernel;
+        MandelWorldDynamic.mirror = RealAxisMirror.NONE;
+        MandelWorldDynamic.canvas = new PixelCanvas(width, height, palette);
+        MandelWorldDynamic.rows = strips;
+        MandelWorldDynamic.rowWidth = (int) Math.ceil((float) height / strips);
+
+        MandelWorldDynamicCustomThreadPool.width = width;
+        MandelWorldDynamicCustomThreadPool.height = height;
+        MandelWorldDynamicCustomThreadPool.dims = dims;
+        MandelWorldDynamicCustomThreadPool.engine = kernel;
+        MandelWorldDynamicCustomThreadPool.maxIterations = maxIterations;
+        MandelWorldDynamicCustomThreadPool.mirror = RealAxisMirror.NONE;
+        MandelWorldDynamicCustomThreadPool.canvas = new PixelCanvas(width, height, palette);
+        MandelWorldDynamicCustomThreadPool.threads = threads;
+        MandelWorldDynamicCustomThreadPool.tasks = strips;
+
+        executor = Executors.newFixedThreadPool(threads);
+        pool = new ThreadPoolCustom(threads, strips, TaskQueue.Type.parse(queue));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        pool.shutdown(true);
+    }
+
+    @Benchmark
+    public void workerStatic() throws InterruptedException {
+        int taskHeight = height / strips;
+        Thread[] workers = new Thread[threads];
+        for (int j = 1; j < threads; ++j) {
+            workers[j] = new Thread(new WorkerStatic(j, true, maxIterations, width, height,
+                width, taskHeight, strips, 1, strips, false, threads));
+            workers[j].start();
+        }
+        new WorkerStatic(0, true, maxIterations, width, height,
+            width, taskHeight, strips, 1, strips, false, threads).run();
+        for (int j = 1; j < threads; ++j) {
+            workers[j].join();
+        }
+    }
+
+    @Benchmark
+    public void workerDynamic() throws Exception {
+        List<Future<?>> parts = new ArrayList<>(strips);
+        for (int i = 0; i < strips; ++i) {
+            parts.add(executor.submit(new WorkerDynamic(i)));
+        }
+        for (Future<?> part : parts) {
+            part.get();
+        }
+    }
+
+    @Benchmark
+    public void threadPoolCustom() throws Exception {
+        MandelWorldDynamicCustomThreadPool.render(pool);
+    }
+}
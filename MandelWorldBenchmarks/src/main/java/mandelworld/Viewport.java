@@ -0,0 +1,50 @@
+package mandelworld;
+
+import java.awt.Color;
+
+// Fixed views for the benchmarks, named by where their iterations go:
+// almost every pixel of INTERIOR runs to the limit, BOUNDARY is the
+// drivers' default view with counts spread over the whole range, and
+// most of EXTERIOR escapes within a few iterations. DEEP is 2e-17 wide,
+// below the resolution of a double, so only the offset engines resolve
+// it; plain doubles see a single point.
+public enum Viewport {
+    INTERIOR("-0.45:-0.05:-0.2:0.2"),
+    BOUNDARY("-0.6386:-0.5986:0.4456:0.4686"),
+    EXTERIOR("-2.5:1.5:-2:2"),
+    DEEP("-0.10109636384562001:-0.10109636384561999:0.95628651080913999:0.95628651080914001");
+
+    private final String rect;
+
+    Viewport(String rect) {
+        this.rect = rect;
+    }
+
+    public static Viewport parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    public String rect() {
+        return rect;
+    }
+
+    public double[] dims() {
+        String[] parts = rect.split(":");
+        double[] dims = new double[parts.length];
+        for (int j = 0; j < parts.length; ++j) {
+            dims[j] = Double.parseDouble(parts[j]);
+        }
+        return dims;
+    }
+
+    // The palette of the static and fork/join drivers.
+    static int[] palette(int maxIterations) {
+        int[] colors = new int[maxIterations + 1];
+        for (int j = 0; j < maxIterations; ++j) {
+            colors[j] = Color.HSBtoRGB(((100 + 1.7f * (float) Math.log(j) * (float) Math.sqrt(j)) / 256f),
+                0.77f, j / (j + 2.5f));
+        }
+        colors[maxIterations] = Color.BLACK.getRGB();
+        return colors;
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class BandStream {
+
+    private final MandelKernel.Engine engine;
+    private final int maxIterations;
+    private final double[] dims;
+    private final int width, height, bandHeight, bands, window;
+    private final int[] palette;
+
+    private final int[][] slots;
+    private final int[] rendered;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private int written = 0;
+    private Throwable failure;
+    private IterationFile counts;
+
+    private long bytesWritten, nanos;
+
+    public BandStream(MandelKernel.Engine engine, int maxIterations, double[] dims,
+                      int width, int height, int bandHeight, int window, int[] palette) {
+        this.engine = engine;
+        this.maxIterations = maxIterations;
+        this.dims = dims;
+        this.width = width;
+        this.height = height;
+        this.bandHeight = Math.max(1, Math.min(bandHeight, height));
+        this.bands = (height + this.bandHeight - 1) / this.bandHeight;
+        this.window = Math.max(1, Math.min(window, bands));
+        this.palette = palette;
+        this.slots = new int[this.window][width * this.bandHeight];
+        this.rendered = new int[this.window];
+        Arrays.fill(rendered, -1);
+    }
+
+    public void setCounts(IterationFile counts) {
+        this.counts = counts;
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    // Blocks until band - window has been written, so a caller that walks
+    // its own bands in increasing order never holds more than window slots.
+    public void renderBand(int band) throws InterruptedException {
+        lock.lock();
+        try {
+            while (band >= written + window && failure == null) {
+                changed.await();
+            }
+            if (failure != null) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            fill(band, slots[band % window]);
+        } catch (RuntimeException | Error e) {
+            fail(e);
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            rendered[band % window] = band;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // With an executor, bands are submitted as slots free up and tasks never
+    // block; without one, the caller's own threads must call renderBand.
+    public void write(String pathName, Executor executor) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        if (executor != null) {
+            for (int band = 0; band < window; ++band) {
+                submit(executor, band);
+            }
+        }
+
+        try (OutputStream file = new BufferedOutputStream(new FileOutputStream(pathName), 1 << 16)) {
+            PngWriter png = new PngWriter(file, width, height);
+            for (int band = 0; band < bands; ++band) {
+                int slot = band % window;
+                lock.lock();
+                try {
+                    while (rendered[slot] != band && failure == null) {
+                        changed.await();
+                    }
+                    if (failure != null) {
+                        throw new IOException("band " + band + " failed to render", failure);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                png.writeRows(slots[slot], 0, rows(band));
+
+                lock.lock();
+                try {
+                    rendered[slot] = -1;
+                    ++written;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                if (executor != null && band + window < bands) {
+                    submit(executor, band + window);
+                }
+            }
+            png.close();
+            bytesWritten = png.getBytesWritten();
+        }
+        nanos = System.nanoTime() - start;
+    }
+
+    public String report() {
+        double mb = bytesWritten / (1024.0 * 1024.0);
+        return String.format("Streamed %d bands of %d lines through %d buffers: %.1f MB encoded in %d ms (%.1f MB/s), peak heap %.1f MB.",
+            bands, bandHeight, window, mb, nanos / 1_000_000, nanos == 0 ? 0.0 : mb * 1e9 / nanos,
+            peakHeap() / (1024.0 * 1024.0));
+    }
+
+    public static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    public static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private void submit(Executor executor, int band) {
+        executor.execute(() -> {
+            try {
+                renderBand(band);
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        });
+    }
+
+    private void fail(Throwable e) {
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = e;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int rows(int band) {
+        return Math.min(bandHeight, height - band * bandHeight);
+    }
+
+    private void fill(int band, int[] rgb) {
+        double[] re = new double[width], im = new double[width];
+        int[] line = new int[width];
+        MandelKernel.fillAxis(re, 0, width, dims[0], dims[1], width);
+        int y0 = band * bandHeight;
+        for (int r = 0, offset = 0; r < rows(band); ++r, offset += width) {
+            Arrays.fill(im, dims[2] + ((double) (y0 + r) / height) * (dims[3] - dims[2]));
+            MandelKernel.generateIterations(engine, re, im, line, width, maxIterations);
+            for (int x = 0; x < width; ++x) {
+                rgb[offset + x] = palette[line[x]];
+            }
+            if (counts != null) {
+                counts.setRow(0, y0 + r, line, width);
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Renders a file of jobs, one per line as "-r RE0:RE1:IM0:IM1 -s WxH -o
+// PATH" with -r and -s defaulting to the driver's view, in one JVM. Each
+// job's counts are computed on the caller's executor, then coloured and
+// encoded by an output stage with threads of its own, which overlaps the
+// compute of the next job. Jobs hand DEPTH sets of buffers round between
+// the two stages; a set is only reallocated for a job larger than any
+// before, so a batch of same-sized jobs allocates two sets in total.
+public class BatchRender {
+
+    private static final int DEPTH = 2;
+    private static final int ROWS_PER_TASK = 8;
+
+    public static final class Job {
+        final int index, line;
+        final double[] dims;
+        final int width, height;
+        final String pathName;
+        long computeNanos, colorNanos, encodeNanos, bytes;
+        long started, finished;
+
+        Job(int index, int line, double[] dims, int width, int height, String pathName) {
+            this.index = index;
+            this.line = line;
+            this.dims = dims;
+            this.width = width;
+            this.height = height;
+            this.pathName = pathName;
+        }
+    }
+
+    private static final class Buffers {
+        int[] counts = new int[0], rgb = new int[0];
+        boolean reserve(int pixels) {
+            if (counts.length >= pixels) {
+                return false;
+            }
+            counts = new int[pixels];
+            rgb = new int[pixels];
+            return true;
+        }
+    }
+
+    private final MandelKernel.Engine engine;
+    private final int maxIterations;
+    private final int[] palette;
+    private final int encoderThreads;
+    private int allocations;
+
+    public BatchRender(MandelKernel.Engine engine, int maxIterations, int[] palette, int encoderThreads) {
+        this.engine = engine;
+        this.maxIterations = maxIterations;
+        this.palette = palette;
+        this.encoderThreads = Math.max(1, encoderThreads);
+    }
+
+    public static List<Job> read(String pathName, double[] dims, int width, int height) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Paths.get(pathName));
+        for (int n = 0; n < lines.size(); ++n) {
+            String text = lines.get(n).trim();
+            if (text.isEmpty() || text.startsWith("#")) {
+                continue;
+            }
+            try {
+                jobs.add(parse(jobs.size() + 1, n + 1, text, dims, width, height));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(pathName + ":" + (n + 1) + ": " + e.getMessage());
+            }
+        }
+        if (jobs.isEmpty()) {
+            throw new IOException(pathName + ": no jobs");
+        }
+        return jobs;
+    }
+
+    private static Job parse(int index, int line, String text, double[] dims, int width, int height) {
+        String[] words = text.split("\\s+");
+        String pathName = null;
+        dims = dims.clone();
+        for (int k = 0; k < words.length; k += 2) {
+            if (k + 1 == words.length) {
+                throw new IllegalArgumentException("missing value for " + words[k]);
+            }
+            String value = words[k + 1];
+            switch (words[k]) {
+                case "-r":
+                    String[] points = value.split(":");
+                    if (points.length != 4) {
+                        throw new IllegalArgumentException("rect needs four points: " + value);
+                    }
+                    for (int i = 0; i < 4; ++i) {
+                        dims[i] = Double.parseDouble(points[i]);
+                    }
+                    break;
+                case "-s":
+                    String[] size = value.split("x");
+                    if (size.length != 2) {
+                        throw new IllegalArgumentException("size needs WxH: " + value);
+                    }
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    if (width < 1 || height < 1) {
+                        throw new IllegalArgumentException("size must be positive: " + value);
+                    }
+                    break;
+                case "-o":
+                    pathName = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + words[k]);
+            }
+        }
+        if (pathName == null) {
+            throw new IllegalArgumentException("every job needs -o");
+        }
+        return new Job(index, line, dims, width, height, pathName);
+    }
+
+    public void run(List<Job> jobs, Executor executor) throws Exception {
+        BlockingQueue<Buffers> free = new ArrayBlockingQueue<>(DEPTH);
+        for (int k = 0; k < DEPTH; ++k) {
+            free.add(new Buffers());
+        }
+        ExecutorService output = Executors.newSingleThreadExecutor();
+        ExecutorService encoders = Executors.newFixedThreadPool(encoderThreads);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long begin = System.nanoTime();
+        try {
+            for (Job job : jobs) {
+                Buffers buffers = free.take();
+                if (failure.get() != null) {
+                    break;
+                }
+                job.started = System.nanoTime();
+                if (buffers.reserve(job.width * job.height)) {
+                    ++allocations;
+                }
+                compute(job, buffers.counts, executor);
+                job.computeNanos = System.nanoTime() - job.started;
+                output.execute(() -> {
+                    try {
+                        write(job, buffers, encoders);
+                        System.out.println(report(job));
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, new Exception("job on line " + job.line + " failed: " + e.getMessage(), e));
+                    } finally {
+                        free.add(buffers);
+                    }
+                });
+            }
+        } finally {
+            output.shutdown();
+            output.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            encoders.shutdown();
+        }
+        if (failure.get() != null) {
+            throw (Exception) failure.get();
+        }
+        System.out.println(summary(jobs, System.nanoTime() - begin));
+    }
+
+    private void compute(Job job, int[] counts, Executor executor) throws Exception {
+        int width = job.width, height = job.height;
+        double[] re = new double[width];
+        MandelKernel.fillAxis(re, 0, width, job.dims[0], job.dims[1], width);
+        int tasks = (height + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        CountDownLatch done = new CountDownLatch(tasks);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int task = 0; task < tasks; ++task) {
+            int y0 = task * ROWS_PER_TASK, y1 = Math.min(height, y0 + ROWS_PER_TASK);
+            executor.execute(() -> {
+                try {
+                    double[] im = new double[width];
+                    int[] line = new int[width];
+                    for (int y = y0; y < y1; ++y) {
+                        Arrays.fill(im, job.dims[2] + ((double) y / height) * (job.dims[3] - job.dims[2]));
+                        MandelKernel.generateIterations(engine, re, im, line, width, maxIterations);
+                        System.arraycopy(line, 0, counts, y * width, width);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw new Exception("job on line " + job.line + " failed to render", failure.get());
+        }
+    }
+
+    private void write(Job job, Buffers buffers, Executor encoders) throws IOException {
+        int pixels = job.width * job.height;
+        long start = System.nanoTime();
+        int[] counts = buffers.counts, rgb = buffers.rgb;
+        for (int i = 0; i < pixels; ++i) {
+            rgb[i] = palette[counts[i]];
+        }
+        long colored = System.nanoTime();
+        ParallelPngEncoder encoder = new ParallelPngEncoder(encoderThreads);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(job.pathName), 1 << 16)) {
+            encoder.write(rgb, job.width, job.height, out, encoders);
+        }
+        job.finished = System.nanoTime();
+        job.colorNanos = colored - start;
+        job.encodeNanos = job.finished - colored;
+        job.bytes = encoder.getBytesWritten();
+    }
+
+    private static String report(Job job) {
+        double megapixels = (double) job.width * job.height / 1e6;
+        return String.format("Job %d: %dx%d, %.1f ms compute, %.1f ms color, %.1f ms encode, %.2f Mpx/s, %.1f MB to %s.",
+            job.index, job.width, job.height, job.computeNanos / 1e6, job.colorNanos / 1e6, job.encodeNanos / 1e6,
+            megapixels * 1e9 / (job.finished - job.started), job.bytes / (1024.0 * 1024.0), job.pathName);
+    }
+
+    // Stage time is what the jobs would take one after another; the wall
+    // time is lower by whatever the pipeline overlapped.
+    private String summary(List<Job> jobs, long wallNanos) {
+        double megapixels = 0;
+        long stages = 0;
+        for (Job job : jobs) {
+            megapixels += (double) job.width * job.height / 1e6;
+            stages += job.computeNanos + job.colorNanos + job.encodeNanos;
+        }
+        return String.format("%d jobs, %.1f Mpx in %.1f ms (%.1f ms of stages), %.2f Mpx/s, %d buffer sets allocated.",
+            jobs.size(), megapixels, wallNanos / 1e6, stages / 1e6, megapixels * 1e9 / wallNanos, allocations);
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.Arrays;
+
+public class CostProbe {
+
+    private final int step;
+    private final int gridWidth, gridHeight;
+    private final int width, height;
+    private final long[][] table;
+
+    public CostProbe(MandelKernel.Engine engine, int maxIterations, double[] dims, int width, int height, int step) {
+        this.step = Math.max(1, step);
+        this.width = width;
+        this.height = height;
+        this.gridWidth = (width + this.step - 1) / this.step;
+        this.gridHeight = (height + this.step - 1) / this.step;
+        this.table = new long[gridWidth + 1][gridHeight + 1];
+
+        double[] re = new double[gridWidth], im = new double[gridWidth];
+        int[] line = new int[gridWidth];
+        for (int i = 0; i < gridWidth; ++i) {
+            re[i] = dims[0] + ((double) (i * this.step) / width) * (dims[1] - dims[0]);
+        }
+
+        for (int j = 0; j < gridHeight; ++j) {
+            Arrays.fill(im, dims[2] + ((double) (j * this.step) / height) * (dims[3] - dims[2]));
+            MandelKernel.generateIterations(engine, re, im, line, gridWidth, maxIterations);
+            long rowSum = 0;
+            for (int i = 0; i < gridWidth; ++i) {
+                rowSum += line[i] + 1;
+                table[i + 1][j + 1] = table[i + 1][j] + rowSum;
+            }
+        }
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    public long total() {
+        return cost(0, 0, width, height);
+    }
+
+    public int[] partition(int parts, boolean byCols) {
+        return partition(parts, byCols, 0, height);
+    }
+
+    // Only rows y0 to y1 count towards the balance, the rest are not iterated.
+    public int[] partition(int parts, boolean byCols, int y0, int y1) {
+        int size = byCols ? width : height;
+        long[] prefix = new long[size + 1];
+        for (int k = 0; k < size; ++k) {
+            long line = byCols ? cost(k, y0, k + 1, y1) : k < y0 || k >= y1 ? 0 : cost(0, k, width, k + 1);
+            prefix[k + 1] = prefix[k] + line;
+        }
+
+        int[] bounds = new int[parts + 1];
+        bounds[parts] = size;
+        int k = 0;
+        for (int part = 1; part < parts; ++part) {
+            long target = prefix[size] * part / parts;
+            while (k < size && prefix[k] < target) {
+                ++k;
+            }
+            bounds[part] = Math.max(k, bounds[part - 1]);
+        }
+        return bounds;
+    }
+
+    public long cost(int x0, int y0, int x1, int y1) {
+        if (x1 <= x0 || y1 <= y0) {
+            return 0;
+        }
+        int i0 = x0 / step, j0 = y0 / step;
+        int i1 = Math.min(gridWidth, (x1 + step - 1) / step), j1 = Math.min(gridHeight, (y1 + step - 1) / step);
+        long sum = table[i1][j1] - table[i0][j1] - table[i1][j0] + table[i0][j0];
+        long cells = (long) (i1 - i0) * (j1 - j0);
+        return cells == 0 ? 0 : sum * (x1 - x0) * (y1 - y0) / cells;
+    }
+}
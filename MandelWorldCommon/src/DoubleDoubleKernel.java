@@ -0,0 +1,111 @@
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+// Iterates z = z^2 + c with every coordinate held as an unevaluated sum of
+// two doubles, hi + lo, which carries about 106 bits. The viewport centre
+// is split into hi and lo once; the drivers map pixels as double offsets
+// from it, which keeps full relative precision however deep the view, and
+// each pixel's c is the exact double-double sum of centre and offset.
+public final class DoubleDoubleKernel implements MandelKernel.Line {
+
+    private static volatile DoubleDoubleKernel installed;
+
+    private final BigDecimal centerRe, centerIm;
+    private final double centerReHi, centerReLo, centerImHi, centerImLo;
+
+    private DoubleDoubleKernel(BigDecimal centerRe, BigDecimal centerIm) {
+        this.centerRe = centerRe;
+        this.centerIm = centerIm;
+        this.centerReHi = centerRe.doubleValue();
+        this.centerReLo = centerRe.subtract(new BigDecimal(centerReHi)).doubleValue();
+        this.centerImHi = centerIm.doubleValue();
+        this.centerImLo = centerIm.subtract(new BigDecimal(centerImHi)).doubleValue();
+    }
+
+    // Same contract as PerturbationReference.install: rect is the text of
+    // the -r option or null for dims, the result is the rect as offsets.
+    public static double[] install(String rect, double[] dims) {
+        BigDecimal[] edges = PerturbationReference.edges(rect, dims);
+        BigDecimal half = new BigDecimal("0.5");
+        BigDecimal centerRe = edges[0].add(edges[1]).multiply(half), centerIm = edges[2].add(edges[3]).multiply(half);
+        installed = new DoubleDoubleKernel(centerRe, centerIm);
+        return new double[]{edges[0].subtract(centerRe).doubleValue(), edges[1].subtract(centerRe).doubleValue(),
+            edges[2].subtract(centerIm).doubleValue(), edges[3].subtract(centerIm).doubleValue()};
+    }
+
+    static double[] absolute(double[] offsets) {
+        DoubleDoubleKernel kernel = installed();
+        return PerturbationReference.absolute(kernel.centerRe, kernel.centerIm, offsets);
+    }
+
+    static DoubleDoubleKernel installed() {
+        DoubleDoubleKernel kernel = installed;
+        if (kernel == null) {
+            throw new IllegalStateException("double-double engine used without a centre");
+        }
+        return kernel;
+    }
+
+    public static String key() {
+        DoubleDoubleKernel kernel = installed;
+        if (kernel == null) {
+            return "";
+        }
+        String center = kernel.centerRe.toString() + ":" + kernel.centerIm.toString();
+        return UUID.nameUUIDFromBytes(center.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    @Override
+    public void generateIterations(double[] re, double[] im, int[] out, int count, int maxIterations) {
+        for (int i = 0; i < count; ++i) {
+            out[i] = generateIteration(re[i], im[i], maxIterations);
+        }
+    }
+
+    // Each step forms the squares and the cross product exactly with fma,
+    // then adds c with an error-free two-sum and renormalises hi and lo.
+    int generateIteration(double offsetRe, double offsetIm, int maxIterations) {
+        double s = centerReHi + offsetRe, v = s - centerReHi;
+        double e = (centerReHi - (s - v)) + (offsetRe - v) + centerReLo;
+        double cReHi = s + e, cReLo = e - (cReHi - s);
+        s = centerImHi + offsetIm;
+        v = s - centerImHi;
+        e = (centerImHi - (s - v)) + (offsetIm - v) + centerImLo;
+        double cImHi = s + e, cImLo = e - (cImHi - s);
+
+        double reHi = 0, reLo = 0, imHi = 0, imLo = 0;
+
+        int currentIteration = 0;
+
+        while (currentIteration < maxIterations) {
+            double re2 = reHi * reHi, im2 = imHi * imHi;
+            if (re2 + im2 > MandelKernel.BAILOUT_SQUARED) {
+                break;
+            }
+            double re2Lo = Math.fma(reHi, reHi, -re2) + 2 * reHi * reLo;
+            double im2Lo = Math.fma(imHi, imHi, -im2) + 2 * imHi * imLo;
+            double reIm = reHi * imHi;
+            double reImLo = Math.fma(reHi, imHi, -reIm) + reHi * imLo + reLo * imHi;
+
+            s = re2 - im2;
+            v = s - re2;
+            e = (re2 - (s - v)) + (-im2 - v) + (re2Lo - im2Lo);
+            double t = s + cReHi;
+            v = t - s;
+            e = (s - (t - v)) + (cReHi - v) + e + cReLo;
+            reHi = t + e;
+            reLo = e - (reHi - t);
+
+            s = reIm + reIm;
+            t = s + cImHi;
+            v = t - s;
+            e = (s - (t - v)) + (cImHi - v) + (reImLo + reImLo) + cImLo;
+            imHi = t + e;
+            imLo = e - (imHi - t);
+
+            ++currentIteration;
+        }
+        return currentIteration;
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// Second pass over a finished 1x render. A pixel whose count differs from
+// one of its four neighbours by more than the threshold is resampled on a
+// grid x grid jittered grid spanning the pixel around its own sample point,
+// and its colour becomes the average of the samples' colours. Counts (and
+// raw files) keep the 1x value; only the colour is refined.
+public class EdgeSupersampler {
+
+    private static final int ROWS_PER_TASK = 8;
+
+    private final PixelCanvas canvas;
+    private final MandelKernel.Engine engine;
+    private final int maxIterations;
+    private final double[] dims;
+    private final int width, height, grid, threshold;
+    private final int from, to;
+
+    private final LongAdder refined = new LongAdder(), pixels = new LongAdder();
+    private final LongAdder baseIterations = new LongAdder(), sampleIterations = new LongAdder();
+
+    // Only rows from to to - 1 are examined and refined, neighbours outside
+    // them are ignored; the canvas must keep iterations.
+    public EdgeSupersampler(PixelCanvas canvas, MandelKernel.Engine engine, int maxIterations, double[] dims,
+                            int width, int height, int grid, int threshold, int from, int to) {
+        this.canvas = canvas;
+        this.engine = engine;
+        this.maxIterations = maxIterations;
+        this.dims = dims;
+        this.width = width;
+        this.height = height;
+        this.grid = Math.max(1, grid);
+        this.threshold = Math.max(0, threshold);
+        this.from = Math.max(0, from);
+        this.to = Math.min(height, to);
+    }
+
+    // Parses the value of the anti-aliasing option, "N" or "N:T".
+    public static int[] parse(String text) {
+        String[] parts = text.split(":");
+        int grid = Integer.parseInt(parts[0].trim());
+        int threshold = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+        if (grid < 2 || threshold < 0) {
+            throw new NumberFormatException("anti-aliasing needs a grid of at least 2 and a threshold of at least 0: " + text);
+        }
+        return new int[]{grid, threshold};
+    }
+
+    public int getTasks() {
+        return Math.max(0, (to - from + ROWS_PER_TASK - 1) / ROWS_PER_TASK);
+    }
+
+    public void refine(Executor executor) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(getTasks());
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        for (int task = 0; task < getTasks(); ++task) {
+            int index = task;
+            executor.execute(() -> {
+                try {
+                    refineTask(index);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    // Refinement only stores colours, so the counts the edge test reads
+    // stay the 1x ones whatever order the tasks run in.
+    public void refineTask(int index) {
+        int y0 = from + index * ROWS_PER_TASK, y1 = Math.min(to, y0 + ROWS_PER_TASK);
+        int samples = grid * grid;
+        double[] re = new double[samples], im = new double[samples];
+        int[] line = new int[samples];
+        long refinedHere = 0, base = 0, extra = 0;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int iterations = canvas.getIterations(x, y);
+                base += iterations + 1;
+                if (!isEdge(x, y, iterations)) {
+                    continue;
+                }
+                SplittableRandom jitter = new SplittableRandom((long) y * width + x);
+                for (int j = 0, k = 0; j < grid; ++j) {
+                    for (int i = 0; i < grid; ++i, ++k) {
+                        double sx = x - 0.5 + (i + jitter.nextDouble()) / grid;
+                        double sy = y - 0.5 + (j + jitter.nextDouble()) / grid;
+                        re[k] = dims[0] + (sx / width) * (dims[1] - dims[0]);
+                        im[k] = dims[2] + (sy / height) * (dims[3] - dims[2]);
+                    }
+                }
+                MandelKernel.generateIterations(engine, re, im, line, samples, maxIterations);
+                int r = 0, g = 0, b = 0;
+                for (int k = 0; k < samples; ++k) {
+                    int color = canvas.color(line[k]);
+                    r += (color >> 16) & 0xFF;
+                    g += (color >> 8) & 0xFF;
+                    b += color & 0xFF;
+                    extra += line[k] + 1;
+                }
+                canvas.store(x, y, ((r / samples) << 16) | ((g / samples) << 8) | (b / samples));
+                ++refinedHere;
+            }
+        }
+        refined.add(refinedHere);
+        pixels.add((long) (y1 - y0) * width);
+        baseIterations.add(base);
+        sampleIterations.add(extra);
+    }
+
+    // Uniform supersampling would iterate every pixel grid^2 times, which
+    // is estimated from the 1x counts, against what this render iterated.
+    public String report(long millis) {
+        long all = pixels.sum(), some = refined.sum(), base = baseIterations.sum(), extra = sampleIterations.sum();
+        double speedup = base + extra == 0 ? 0.0 : (double) grid * grid * base / (base + extra);
+        return String.format("Supersampling: %d of %d pixels refined (%.2f%%) with %dx%d jittered samples in %d ms, "
+                + "%.1fx fewer iterations than uniform %dx%d supersampling (estimated from the 1x counts).",
+            some, all, all == 0 ? 0.0 : 100.0 * some / all, grid, grid, millis, speedup, grid, grid);
+    }
+
+    private boolean isEdge(int x, int y, int iterations) {
+        return (x > 0 && differs(x - 1, y, iterations)) || (x + 1 < width && differs(x + 1, y, iterations))
+            || (y > from && differs(x, y - 1, iterations)) || (y + 1 < to && differs(x, y + 1, iterations));
+    }
+
+    private boolean differs(int x, int y, int iterations) {
+        return Math.abs(canvas.getIterations(x, y) - iterations) > threshold;
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Layout, little-endian: "MWIT", version, width, height, maxIterations,
+// flags, absolute re/im rect as four doubles, padding up to HEADER_SIZE,
+// then one count per pixel row by row (16 bits, or 32 if maxIterations does
+// not fit) and, with FLAG_SMOOTH, one float of fractional escape time per
+// pixel.
+public class IterationFile implements AutoCloseable {
+
+    private static final int MAGIC = 0x5449574D;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int FLAG_WIDE = 1, FLAG_SMOOTH = 2;
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final int width, height, maxIterations, flags;
+    private final double[] dims;
+    private final int countBytes, rowsPerSegment;
+    private final List<MappedByteBuffer> counts = new ArrayList<>(), smooth = new ArrayList<>();
+
+    private IterationFile(RandomAccessFile file, int width, int height, int maxIterations, int flags,
+                          double[] dims, boolean writable) throws IOException {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.maxIterations = maxIterations;
+        this.flags = flags;
+        this.dims = dims;
+        this.countBytes = (flags & FLAG_WIDE) != 0 ? 4 : 2;
+        // Counts and smooth values share the segment rows, so a smooth file
+        // sizes them for its 4-byte floats.
+        int pixelBytes = isSmooth() ? 4 : countBytes;
+        this.rowsPerSegment = (int) Math.max(1, Math.min(height, SEGMENT_BYTES / ((long) width * pixelBytes)));
+
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        long smoothStart = HEADER_SIZE + (long) width * height * countBytes;
+        map(counts, mode, HEADER_SIZE, countBytes);
+        if (isSmooth()) {
+            map(smooth, mode, smoothStart, 4);
+        }
+    }
+
+    // dims is the rect as the engine maps it, offsets for an offset engine.
+    // Smooth values replay orbits in doubles from the absolute rect, which
+    // is exactly what an offset engine is there to avoid, so those refuse.
+    public static IterationFile create(String pathName, int width, int height, int maxIterations,
+                                       MandelKernel.Engine engine, double[] dims, boolean smooth) throws IOException {
+        if (smooth && engine.isOffset()) {
+            throw new IOException("smooth escape times need the primitive engine, not "
+                + engine.name().toLowerCase() + ", write the counts without them");
+        }
+        dims = engine.absolute(dims);
+        int flags = (maxIterations > 0xFFFF ? FLAG_WIDE : 0) | (smooth ? FLAG_SMOOTH : 0);
+        RandomAccessFile file = new RandomAccessFile(pathName, "rw");
+        file.setLength(0);
+        file.setLength(size(width, height, flags));
+        MappedByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(maxIterations).putInt(flags);
+        for (int j = 0; j < 4; ++j) {
+            header.putDouble(dims[j]);
+        }
+        header.force();
+        return new IterationFile(file, width, height, maxIterations, flags, dims, true);
+    }
+
+    public static IterationFile open(String pathName) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(pathName, "r");
+        try {
+            if (file.length() < HEADER_SIZE) {
+                throw new IOException(pathName + " is not an iteration count file");
+            }
+            MappedByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(pathName + " is not an iteration count file");
+            }
+            int width = header.getInt(), height = header.getInt(), maxIterations = header.getInt(), flags = header.getInt();
+            if (width < 1 || height < 1 || file.length() < size(width, height, flags)) {
+                throw new IOException(pathName + " is truncated");
+            }
+            double[] dims = new double[4];
+            for (int j = 0; j < 4; ++j) {
+                dims[j] = header.getDouble();
+            }
+            return new IterationFile(file, width, height, maxIterations, flags, dims, false);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public double[] getDims() {
+        return dims.clone();
+    }
+
+    public boolean isSmooth() {
+        return (flags & FLAG_SMOOTH) != 0;
+    }
+
+    public int get(int x, int y) {
+        MappedByteBuffer segment = counts.get(y / rowsPerSegment);
+        int index = ((y % rowsPerSegment) * width + x) * countBytes;
+        return countBytes == 4 ? segment.getInt(index) : segment.getShort(index) & 0xFFFF;
+    }
+
+    public void set(int x, int y, int iterations) {
+        put(x, y, iterations);
+        if (isSmooth()) {
+            putSmooth(x, y, iterations);
+        }
+    }
+
+    public void setRow(int x0, int y, int[] iterations, int count) {
+        setRow(x0, y, iterations, 0, count);
+    }
+
+    public void setRow(int x0, int y, int[] iterations, int from, int count) {
+        for (int i = 0; i < count; ++i) {
+            set(x0 + i, y, iterations[from + i]);
+        }
+    }
+
+    public void setColumn(int x, int y0, int[] iterations, int count) {
+        for (int i = 0; i < count; ++i) {
+            set(x, y0 + i, iterations[i]);
+        }
+    }
+
+    public void fill(int fromX, int fromY, int x0, int y0, int x1, int y1) {
+        int iterations = get(fromX, fromY);
+        float fraction = isSmooth() ? getSmooth(fromX, fromY) : 0;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = x0; x < x1; ++x) {
+                put(x, y, iterations);
+                if (isSmooth()) {
+                    smooth.get(y / rowsPerSegment).putFloat(((y % rowsPerSegment) * width + x) * 4, fraction);
+                }
+            }
+        }
+    }
+
+    public void copyRow(int fromY, int toY) {
+        for (int x = 0; x < width; ++x) {
+            put(x, toY, get(x, fromY));
+            if (isSmooth()) {
+                smooth.get(toY / rowsPerSegment).putFloat(((toY % rowsPerSegment) * width + x) * 4, getSmooth(x, fromY));
+            }
+        }
+    }
+
+    public float getSmooth(int x, int y) {
+        return smooth.get(y / rowsPerSegment).getFloat(((y % rowsPerSegment) * width + x) * 4);
+    }
+
+    // Rows are split between threads and written straight into the canvas;
+    // with smooth values each pixel blends the two neighbouring palette
+    // entries by the fractional part of its escape time.
+    public void recolor(PixelCanvas canvas, int[] palette, int threads) throws Exception {
+        int[] data = canvas.getData();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<?>> parts = new ArrayList<>();
+            int rows = (height + threads - 1) / Math.max(1, threads);
+            for (int y0 = 0; y0 < height; y0 += rows) {
+                int from = y0, to = Math.min(height, y0 + rows);
+                parts.add(pool.submit(() -> {
+                    for (int y = from; y < to; ++y) {
+                        for (int x = 0, offset = y * width; x < width; ++x) {
+                            data[offset + x] = color(palette, x, y);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> part : parts) {
+                part.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file.getChannel().isOpen()) {
+            for (MappedByteBuffer segment : counts) {
+                if (!segment.isReadOnly()) {
+                    segment.force();
+                }
+            }
+            for (MappedByteBuffer segment : smooth) {
+                if (!segment.isReadOnly()) {
+                    segment.force();
+                }
+            }
+        }
+        file.close();
+    }
+
+    private int color(int[] palette, int x, int y) {
+        int iterations = get(x, y);
+        if (!isSmooth() || iterations >= maxIterations) {
+            return palette[iterations];
+        }
+        float mu = getSmooth(x, y);
+        int low = Math.max(0, Math.min(maxIterations - 1, (int) Math.floor(mu)));
+        int high = Math.min(maxIterations - 1, low + 1);
+        return blend(palette[low], palette[high], Math.max(0f, Math.min(1f, mu - low)));
+    }
+
+    private static int blend(int from, int to, float t) {
+        int r = (int) (((from >> 16) & 0xFF) * (1 - t) + ((to >> 16) & 0xFF) * t);
+        int g = (int) (((from >> 8) & 0xFF) * (1 - t) + ((to >> 8) & 0xFF) * t);
+        int b = (int) ((from & 0xFF) * (1 - t) + (to & 0xFF) * t);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private void put(int x, int y, int iterations) {
+        MappedByteBuffer segment = counts.get(y / rowsPerSegment);
+        int index = ((y % rowsPerSegment) * width + x) * countBytes;
+        if (countBytes == 4) {
+            segment.putInt(index, iterations);
+        } else {
+            segment.putShort(index, (short) iterations);
+        }
+    }
+
+    // Replays the orbit to the escape iteration to recover |z|, which the
+    // line kernels do not return, and applies n + 1 - log2(ln |z|).
+    private void putSmooth(int x, int y, int iterations) {
+        float mu = iterations;
+        if (iterations < maxIterations) {
+            double cRe = dims[0] + ((double) x / width) * (dims[1] - dims[0]);
+            double cIm = dims[2] + ((double) y / height) * (dims[3] - dims[2]);
+            double re = 0, im = 0;
+            for (int n = 0; n < iterations; ++n) {
+                double reIm = re * im;
+                re = re * re - im * im + cRe;
+                im = reIm + reIm + cIm;
+            }
+            double modulus = Math.sqrt(re * re + im * im);
+            if (modulus > 1) {
+                mu = (float) Math.max(0, iterations + 1 - Math.log(Math.log(modulus)) / Math.log(2));
+            }
+        }
+        smooth.get(y / rowsPerSegment).putFloat(((y % rowsPerSegment) * width + x) * 4, mu);
+    }
+
+    private static long size(int width, int height, int flags) {
+        long pixels = (long) width * height;
+        return HEADER_SIZE + pixels * ((flags & FLAG_WIDE) != 0 ? 4 : 2) + ((flags & FLAG_SMOOTH) != 0 ? pixels * 4 : 0);
+    }
+
+    private void map(List<MappedByteBuffer> segments, FileChannel.MapMode mode, long start, int bytes)
+            throws IOException {
+        for (int y = 0; y < height; y += rowsPerSegment) {
+            int rows = Math.min(rowsPerSegment, height - y);
+            MappedByteBuffer segment = file.getChannel().map(mode, start + (long) y * width * bytes,
+                (long) rows * width * bytes);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segments.add(segment);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.math3.complex.Complex;
+
+public final class MandelKernel {
+
+    public enum Engine {
+        PRIMITIVE, COMPLEX, VECTOR, DOUBLEDOUBLE, PERTURBATION;
+
+        public static Engine parse(String name) {
+            Engine engine = Engine.valueOf(name.trim().toUpperCase().replace("-", "").replace("_", ""));
+            if (engine == VECTOR && vectorLine() == null) {
+                System.out.println("Vector API (jdk.incubator.vector) is unavailable, falling back to primitive engine.");
+                return PRIMITIVE;
+            }
+            return engine;
+        }
+
+        // Used when no engine is given: plain doubles while neighbouring
+        // pixels are still many ulps apart, double-double down to where its
+        // own ~106 bits run out and the perturbation engine beyond that.
+        public static Engine forView(String rect, double[] dims, int width, int height) {
+            double spacing = PerturbationReference.relativeSpacing(rect, dims, width, height);
+            Engine engine = spacing < DOUBLE_DOUBLE_RESOLUTION ? PERTURBATION
+                : spacing < DOUBLE_RESOLUTION ? DOUBLEDOUBLE : PRIMITIVE;
+            if (engine != PRIMITIVE) {
+                System.out.printf("Pixel spacing is %.1e of the coordinates, using the %s engine.%n", spacing,
+                    engine.name().toLowerCase());
+            }
+            return engine;
+        }
+
+        // Engines that iterate offsets from an installed centre, so the
+        // drivers have to map pixels into offset space for them.
+        public boolean isOffset() {
+            return this == DOUBLEDOUBLE || this == PERTURBATION;
+        }
+
+        // The rect the drivers mapped pixels onto, in absolute coordinates.
+        public double[] absolute(double[] dims) {
+            return this == DOUBLEDOUBLE ? DoubleDoubleKernel.absolute(dims)
+                : this == PERTURBATION ? PerturbationReference.absolute(dims) : dims.clone();
+        }
+    }
+
+    public interface Line {
+        void generateIterations(double[] re, double[] im, int[] out, int count, int maxIterations);
+    }
+
+    static final double BAILOUT_SQUARED = 4.0;
+    static final double BAILOUT_TOLERANCE = 1e-9;
+    static final int SHORT_CIRCUITED = -1;
+    static final int FIRST_PERIOD_CHECK = 8;
+    static final double DOUBLE_RESOLUTION = 1e-13, DOUBLE_DOUBLE_RESOLUTION = 1e-28;
+
+    private static volatile boolean interiorChecks = false;
+    private static final LongAdder shortCircuited = new LongAdder();
+
+    private MandelKernel() {
+    }
+
+    public static void setInteriorChecks(boolean enabled) {
+        interiorChecks = enabled;
+    }
+
+    public static boolean isInteriorChecks() {
+        return interiorChecks;
+    }
+
+    public static long getShortCircuited() {
+        return shortCircuited.sum();
+    }
+
+    public static void resetShortCircuited() {
+        shortCircuited.reset();
+    }
+
+    public static String shortCircuitedReport(long totalPixels) {
+        long skipped = getShortCircuited();
+        return String.format("Short-circuited interior pixels: %d of %d (%.2f%%).", skipped, totalPixels,
+            totalPixels == 0 ? 0.0 : 100.0 * skipped / totalPixels);
+    }
+
+    static void addShortCircuited(long pixels) {
+        if (pixels > 0) {
+            shortCircuited.add(pixels);
+        }
+    }
+
+    public static int generateIteration(Engine engine, double re, double im, int maxIterations) {
+        if (engine == Engine.PERTURBATION) {
+            int[] out = new int[1];
+            PerturbationReference.installed().generateIterations(new double[]{re}, new double[]{im}, out, 1, maxIterations);
+            return out[0];
+        }
+        if (engine == Engine.DOUBLEDOUBLE) {
+            return DoubleDoubleKernel.installed().generateIteration(re, im, maxIterations);
+        }
+        if (engine == Engine.COMPLEX) {
+            return generateIterationComplex(new Complex(re, im), maxIterations);
+        }
+        if (interiorChecks) {
+            int iterations = generateIterationChecked(re, im, maxIterations);
+            if (iterations == SHORT_CIRCUITED) {
+                shortCircuited.increment();
+                return maxIterations;
+            }
+            return iterations;
+        }
+        return generateIteration(re, im, maxIterations);
+    }
+
+    public static void generateIterations(Engine engine, double[] re, double[] im, int[] out,
+                                          int count, int maxIterations) {
+        if (engine == Engine.VECTOR) {
+            Line line = vectorLine();
+            if (line != null) {
+                line.generateIterations(re, im, out, count, maxIterations);
+                return;
+            }
+        }
+        if (engine == Engine.PERTURBATION) {
+            PerturbationReference.installed().generateIterations(re, im, out, count, maxIterations);
+            return;
+        }
+        if (engine == Engine.DOUBLEDOUBLE) {
+            DoubleDoubleKernel.installed().generateIterations(re, im, out, count, maxIterations);
+            return;
+        }
+        if (engine == Engine.COMPLEX || !interiorChecks) {
+            for (int i = 0; i < count; ++i) {
+                out[i] = generateIteration(engine, re[i], im[i], maxIterations);
+            }
+            return;
+        }
+
+        long skipped = 0;
+        for (int i = 0; i < count; ++i) {
+            int iterations = generateIterationChecked(re[i], im[i], maxIterations);
+            if (iterations == SHORT_CIRCUITED) {
+                ++skipped;
+                iterations = maxIterations;
+            }
+            out[i] = iterations;
+        }
+        addShortCircuited(skipped);
+    }
+
+    public static void fillAxis(double[] axis, int from, int count, double start, double end, int size) {
+        for (int i = 0; i < count; ++i) {
+            axis[i] = start + ((double) (from + i) / size) * (end - start);
+        }
+    }
+
+    static Line vectorLine() {
+        return VectorHolder.LINE;
+    }
+
+    private static final class VectorHolder {
+        private static final Line LINE = load();
+
+        private static Line load() {
+            try {
+                return (Line) Class.forName("MandelVectorKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+    }
+
+    public static int generateIteration(double cRe, double cIm, int maxIterations) {
+        double re = 0, im = 0;
+
+        int currentIteration = 0;
+
+        while (currentIteration < maxIterations) {
+            double re2 = re * re, im2 = im * im;
+            double magnitude = re2 + im2;
+            if (magnitude > BAILOUT_SQUARED - BAILOUT_TOLERANCE && escaped(re, im, magnitude)) {
+                break;
+            }
+
+            double reIm = re * im;
+            re = re2 - im2 + cRe;
+            im = reIm + reIm + cIm;
+            ++currentIteration;
+        }
+        return currentIteration;
+    }
+
+    static boolean insideCardioidOrBulb(double re, double im) {
+        double im2 = im * im;
+        double shifted = re - 0.25;
+        double q = shifted * shifted + im2;
+        if (q * (q + shifted) < 0.25 * im2) {
+            return true;
+        }
+        double bulb = re + 1;
+        return bulb * bulb + im2 < 0.0625;
+    }
+
+    // Brent-style cycle detection: z is saved at doubling intervals and an
+    // exact repeat means the orbit is periodic in floating point, so the
+    // result is the same maxIterations the full loop would have produced.
+    static int generateIterationChecked(double cRe, double cIm, int maxIterations) {
+        if (insideCardioidOrBulb(cRe, cIm)) {
+            return SHORT_CIRCUITED;
+        }
+
+        double re = 0, im = 0;
+        double savedRe = 0, savedIm = 0;
+        int period = 0, checkAt = FIRST_PERIOD_CHECK;
+
+        int currentIteration = 0;
+
+        while (currentIteration < maxIterations) {
+            double re2 = re * re, im2 = im * im;
+            double magnitude = re2 + im2;
+            if (magnitude > BAILOUT_SQUARED - BAILOUT_TOLERANCE && escaped(re, im, magnitude)) {
+                return currentIteration;
+            }
+
+            double reIm = re * im;
+            re = re2 - im2 + cRe;
+            im = reIm + reIm + cIm;
+            ++currentIteration;
+
+            if (re == savedRe && im == savedIm) {
+                return currentIteration < maxIterations ? SHORT_CIRCUITED : maxIterations;
+            }
+            if (++period == checkAt) {
+                period = 0;
+                checkAt <<= 1;
+                savedRe = re;
+                savedIm = im;
+            }
+        }
+        return currentIteration;
+    }
+
+    public static int generateIterationComplex(Complex c, int maxIterations) {
+        Complex z = new Complex(0, 0);
+
+        int currentIteration = 0;
+
+        while (z.abs() <= 2 && currentIteration < maxIterations) {
+            z = z.multiply(z).add(c);
+            ++currentIteration;
+        }
+        return currentIteration;
+    }
+
+    // Near |z| == 2 the squared test and Complex.abs() can round differently,
+    // so the narrow band around the bailout falls back to the same formula.
+    static boolean escaped(double re, double im, double magnitude) {
+        if (magnitude > BAILOUT_SQUARED + BAILOUT_TOLERANCE) {
+            return true;
+        }
+        return abs(re, im) > 2;
+    }
+
+    static double abs(double re, double im) {
+        if (Double.isNaN(re) || Double.isNaN(im)) {
+            return Double.NaN;
+        }
+        if (Double.isInfinite(re) || Double.isInfinite(im)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (Math.abs(re) < Math.abs(im)) {
+            if (im == 0.0) {
+                return Math.abs(re);
+            }
+            double q = re / im;
+            return Math.abs(im) * Math.sqrt(1 + q * q);
+        }
+        if (re == 0.0) {
+            return Math.abs(im);
+        }
+        double q = im / re;
+        return Math.abs(re) * Math.sqrt(1 + q * q);
+    }
+}
@@ -0,0 +1,141 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class MandelVectorKernel implements MandelKernel.Line {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void generateIterations(double[] re, double[] im, int[] out, int count, int maxIterations) {
+        int lanes = SPECIES.length();
+        int upper = SPECIES.loopBound(count);
+        boolean interiorChecks = MandelKernel.isInteriorChecks();
+        double[] counts = new double[lanes];
+        long skipped = 0;
+
+        int i = 0;
+        for (; i < upper; i += lanes) {
+            if (interiorChecks) {
+                skipped += generateLanesChecked(re, im, i, counts, maxIterations);
+            } else {
+                generateLanes(re, im, i, counts, maxIterations);
+            }
+            for (int lane = 0; lane < lanes; ++lane) {
+                out[i + lane] = (int) counts[lane];
+            }
+        }
+        MandelKernel.addShortCircuited(skipped);
+
+        for (; i < count; ++i) {
+            out[i] = interiorChecks ? MandelKernel.generateIteration(MandelKernel.Engine.PRIMITIVE, re[i], im[i],
+                maxIterations) : MandelKernel.generateIteration(re[i], im[i], maxIterations);
+        }
+    }
+
+    private static void generateLanes(double[] re, double[] im, int offset, double[] counts, int maxIterations) {
+        DoubleVector cRe = DoubleVector.fromArray(SPECIES, re, offset);
+        DoubleVector cIm = DoubleVector.fromArray(SPECIES, im, offset);
+        DoubleVector zRe = DoubleVector.zero(SPECIES);
+        DoubleVector zIm = DoubleVector.zero(SPECIES);
+        DoubleVector iterations = DoubleVector.zero(SPECIES);
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+        VectorMask<Double> active = SPECIES.maskAll(true);
+
+        double lower = MandelKernel.BAILOUT_SQUARED - MandelKernel.BAILOUT_TOLERANCE;
+
+        for (int currentIteration = 0; currentIteration < maxIterations; ++currentIteration) {
+            DoubleVector re2 = zRe.mul(zRe), im2 = zIm.mul(zIm);
+            DoubleVector magnitude = re2.add(im2);
+
+            VectorMask<Double> near = magnitude.compare(VectorOperators.GT, lower).and(active);
+            if (near.anyTrue()) {
+                active = active.andNot(escapedLanes(zRe, zIm, magnitude, near));
+                if (!active.anyTrue()) {
+                    break;
+                }
+            }
+
+            DoubleVector reIm = zRe.mul(zIm);
+            zRe = re2.sub(im2).add(cRe);
+            zIm = reIm.add(reIm).add(cIm);
+            iterations = iterations.add(one, active);
+        }
+
+        iterations.intoArray(counts, 0);
+    }
+
+    private static int generateLanesChecked(double[] re, double[] im, int offset, double[] counts,
+                                            int maxIterations) {
+        DoubleVector cRe = DoubleVector.fromArray(SPECIES, re, offset);
+        DoubleVector cIm = DoubleVector.fromArray(SPECIES, im, offset);
+        DoubleVector zRe = DoubleVector.zero(SPECIES);
+        DoubleVector zIm = DoubleVector.zero(SPECIES);
+        DoubleVector savedRe = zRe, savedIm = zIm;
+        DoubleVector iterations = DoubleVector.zero(SPECIES);
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+        DoubleVector limit = DoubleVector.broadcast(SPECIES, maxIterations);
+
+        VectorMask<Double> interior = interiorLanes(cRe, cIm);
+        VectorMask<Double> active = interior.not();
+        VectorMask<Double> periodic = SPECIES.maskAll(false);
+
+        double lower = MandelKernel.BAILOUT_SQUARED - MandelKernel.BAILOUT_TOLERANCE;
+        int period = 0, checkAt = MandelKernel.FIRST_PERIOD_CHECK;
+
+        for (int currentIteration = 0; currentIteration < maxIterations && active.anyTrue(); ++currentIteration) {
+            DoubleVector re2 = zRe.mul(zRe), im2 = zIm.mul(zIm);
+            DoubleVector magnitude = re2.add(im2);
+
+            VectorMask<Double> near = magnitude.compare(VectorOperators.GT, lower).and(active);
+            if (near.anyTrue()) {
+                active = active.andNot(escapedLanes(zRe, zIm, magnitude, near));
+                if (!active.anyTrue()) {
+                    break;
+                }
+            }
+
+            DoubleVector reIm = zRe.mul(zIm);
+            zRe = re2.sub(im2).add(cRe);
+            zIm = reIm.add(reIm).add(cIm);
+            iterations = iterations.add(one, active);
+
+            if (currentIteration + 1 < maxIterations) {
+                VectorMask<Double> repeated = zRe.compare(VectorOperators.EQ, savedRe)
+                    .and(zIm.compare(VectorOperators.EQ, savedIm)).and(active);
+                periodic = periodic.or(repeated);
+                active = active.andNot(repeated);
+            }
+            if (++period == checkAt) {
+                period = 0;
+                checkAt <<= 1;
+                savedRe = zRe;
+                savedIm = zIm;
+            }
+        }
+
+        VectorMask<Double> skipped = interior.or(periodic);
+        iterations.blend(limit, skipped).intoArray(counts, 0);
+        return skipped.trueCount();
+    }
+
+    private static VectorMask<Double> interiorLanes(DoubleVector cRe, DoubleVector cIm) {
+        DoubleVector im2 = cIm.mul(cIm);
+        DoubleVector shifted = cRe.sub(0.25);
+        DoubleVector q = shifted.mul(shifted).add(im2);
+        VectorMask<Double> cardioid = q.mul(q.add(shifted)).compare(VectorOperators.LT, im2.mul(0.25));
+        DoubleVector bulb = cRe.add(1.0);
+        return cardioid.or(bulb.mul(bulb).add(im2).compare(VectorOperators.LT, 0.0625));
+    }
+
+    private static VectorMask<Double> escapedLanes(DoubleVector zRe, DoubleVector zIm, DoubleVector magnitude,
+                                                   VectorMask<Double> near) {
+        boolean[] escaped = new boolean[SPECIES.length()];
+        for (int lane = 0; lane < escaped.length; ++lane) {
+            escaped[lane] = near.laneIsSet(lane) && MandelKernel.escaped(zRe.lane(lane), zIm.lane(lane),
+                magnitude.lane(lane));
+        }
+        return VectorMask.fromArray(SPECIES, escaped, 0);
+    }
+}
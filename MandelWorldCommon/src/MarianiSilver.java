@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MarianiSilver {
+
+    public interface Pixels {
+        int get(int x, int y);
+
+        void set(int x, int y, int iterations);
+
+        // The count a pixel was set to, where get() may return its colour;
+        // borders are compared by count, as different counts can share a
+        // colour.
+        default int count(int x, int y) {
+            return get(x, y);
+        }
+
+        default void store(int x, int y, int value) {
+            set(x, y, value);
+        }
+
+        default void fill(int fromX, int fromY, int x0, int y0, int x1, int y1) {
+            int value = get(fromX, fromY);
+            for (int y = y0; y < y1; ++y) {
+                for (int x = x0; x < x1; ++x) {
+                    store(x, y, value);
+                }
+            }
+        }
+    }
+
+    private static final int MIN_SIZE = 8;
+    private static final int MIN_TASK_AREA = 64 * 64;
+
+    private final Pixels pixels;
+    private final MandelKernel.Engine engine;
+    private final int maxIterations;
+    private final double[] dims;
+    private final int width, height;
+    private final Executor executor;
+
+    private int bandFrom = 0, bandTo = Integer.MAX_VALUE;
+
+    private final List<int[]> roots = new ArrayList<>();
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final LongAdder filled = new LongAdder();
+
+    public MarianiSilver(Pixels pixels, MandelKernel.Engine engine, int maxIterations,
+                         double[] dims, int width, int height, Executor executor) {
+        this.pixels = pixels;
+        this.engine = engine;
+        this.maxIterations = maxIterations;
+        this.dims = dims;
+        this.width = width;
+        this.height = height;
+        this.executor = executor;
+    }
+
+    // Rows outside [from, to) are left to the caller, which mirrors them.
+    public void setBand(int from, int to) {
+        bandFrom = from;
+        bandTo = to;
+    }
+
+    public void submit(int x0, int y0, int x1, int y1) {
+        int top = Math.max(y0, bandFrom), bottom = Math.min(y1, bandTo);
+        if (bottom <= top) {
+            return;
+        }
+        synchronized (roots) {
+            roots.add(new int[]{x0, top, x1, bottom});
+        }
+        spawn(() -> render(x0, top, x1, bottom));
+    }
+
+    public void render(int x0, int y0, int x1, int y1) {
+        if (x1 <= x0 || y1 <= y0) {
+            return;
+        }
+        computeRow(y0, x0, x1);
+        if (y1 - 1 > y0) {
+            computeRow(y1 - 1, x0, x1);
+        }
+        if (y1 - y0 > 2) {
+            computeCol(x0, y0 + 1, y1 - 1);
+            if (x1 - 1 > x0) {
+                computeCol(x1 - 1, y0 + 1, y1 - 1);
+            }
+        }
+        subdivide(x0, y0, x1, y1);
+    }
+
+    public void await() throws InterruptedException {
+        finish();
+        done.await();
+    }
+
+    public long getFilled() {
+        return filled.sum();
+    }
+
+    public long verify() {
+        long mismatched = 0;
+        List<int[]> rects;
+        synchronized (roots) {
+            rects = new ArrayList<>(roots);
+        }
+        for (int[] rect : rects) {
+            int count = rect[2] - rect[0];
+            double[] re = new double[count], im = new double[count];
+            int[] line = new int[count];
+            MandelKernel.fillAxis(re, rect[0], count, dims[0], dims[1], width);
+            for (int y = rect[1]; y < rect[3]; ++y) {
+                Arrays.fill(im, dims[2] + ((double) y / height) * (dims[3] - dims[2]));
+                MandelKernel.generateIterations(engine, re, im, line, count, maxIterations);
+                for (int x = rect[0]; x < rect[2]; ++x) {
+                    if (pixels.count(x, y) != line[x - rect[0]]) {
+                        ++mismatched;
+                    }
+                }
+            }
+        }
+        return mismatched;
+    }
+
+    public String report(long totalPixels) {
+        long fill = getFilled();
+        return String.format("Mariani-Silver filled %d of %d pixels without iterating (%.2f%%).", fill, totalPixels,
+            totalPixels == 0 ? 0.0 : 100.0 * fill / totalPixels);
+    }
+
+    private void spawn(Runnable task) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                finish();
+            }
+        });
+    }
+
+    private void finish() {
+        if (pending.decrementAndGet() == 0) {
+            done.countDown();
+        }
+    }
+
+    private void subdivide(int x0, int y0, int x1, int y1) {
+        int w = x1 - x0, h = y1 - y0;
+        if (w <= 2 || h <= 2) {
+            return;
+        }
+
+        int value = pixels.count(x0, y0);
+        if (uniformBorder(x0, y0, x1, y1, value)) {
+            pixels.fill(x0, y0, x0 + 1, y0 + 1, x1 - 1, y1 - 1);
+            filled.add((long) (w - 2) * (h - 2));
+            return;
+        }
+
+        if (w <= MIN_SIZE && h <= MIN_SIZE) {
+            for (int y = y0 + 1; y < y1 - 1; ++y) {
+                computeRow(y, x0 + 1, x1 - 1);
+            }
+            return;
+        }
+
+        if (w >= h) {
+            int mx = x0 + w / 2;
+            computeCol(mx, y0 + 1, y1 - 1);
+            branch(x0, y0, mx + 1, y1);
+            branch(mx, y0, x1, y1);
+        } else {
+            int my = y0 + h / 2;
+            computeRow(my, x0 + 1, x1 - 1);
+            branch(x0, y0, x1, my + 1);
+            branch(x0, my, x1, y1);
+        }
+    }
+
+    private void branch(int x0, int y0, int x1, int y1) {
+        if ((x1 - x0) * (y1 - y0) >= MIN_TASK_AREA) {
+            spawn(() -> subdivide(x0, y0, x1, y1));
+        } else {
+            subdivide(x0, y0, x1, y1);
+        }
+    }
+
+    private boolean uniformBorder(int x0, int y0, int x1, int y1, int value) {
+        for (int x = x0; x < x1; ++x) {
+            if (pixels.count(x, y0) != value || pixels.count(x, y1 - 1) != value) {
+                return false;
+            }
+        }
+        for (int y = y0 + 1; y < y1 - 1; ++y) {
+            if (pixels.count(x0, y) != value || pixels.count(x1 - 1, y) != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void computeRow(int y, int xFrom, int xTo) {
+        int count = xTo - xFrom;
+        double[] re = new double[count], im = new double[count];
+        int[] line = new int[count];
+        MandelKernel.fillAxis(re, xFrom, count, dims[0], dims[1], width);
+        Arrays.fill(im, dims[2] + ((double) y / height) * (dims[3] - dims[2]));
+        MandelKernel.generateIterations(engine, re, im, line, count, maxIterations);
+        for (int i = 0; i < count; ++i) {
+            pixels.set(xFrom + i, y, line[i]);
+        }
+    }
+
+    private void computeCol(int x, int yFrom, int yTo) {
+        int count = yTo - yFrom;
+        if (count <= 0) {
+            return;
+        }
+        double[] re = new double[count], im = new double[count];
+        int[] line = new int[count];
+        MandelKernel.fillAxis(im, yFrom, count, dims[2], dims[3], height);
+        Arrays.fill(re, dims[0] + ((double) x / width) * (dims[1] - dims[0]));
+        MandelKernel.generateIterations(engine, re, im, line, count, maxIterations);
+        for (int i = 0; i < count; ++i) {
+            pixels.set(x, yFrom + i, line[i]);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+public class ParallelPngEncoder {
+
+    private static final int CHUNK_BYTES = 256 * 1024;
+    private static final int DICTIONARY = 32 * 1024;
+    private static final int ADLER_BASE = 65521;
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9C};
+
+    private final int threads, level;
+    private int chunks;
+    private long bytesWritten, encodeNanos, writeNanos, totalNanos;
+
+    public ParallelPngEncoder(int threads) {
+        this(threads, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelPngEncoder(int threads, int level) {
+        this.threads = Math.max(1, threads);
+        this.level = level;
+    }
+
+    public void write(PixelCanvas canvas, String pathName) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(pathName), 1 << 16)) {
+            write(canvas.getData(), canvas.getWidth(), canvas.getHeight(), out, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Every chunk is filtered and deflated independently, primed with the
+    // last 32 KB of the rows before it and ended with a sync flush, so the
+    // pieces concatenate into one zlib stream; the Adler-32 values of the
+    // pieces are combined and the CRC of each IDAT is computed by its worker.
+    public void write(int[] rgb, int width, int height, OutputStream out, Executor executor) throws IOException {
+        long start = System.nanoTime();
+        int rowsPerChunk = Math.max(1, CHUNK_BYTES / (1 + 3 * width));
+        chunks = (height + rowsPerChunk - 1) / rowsPerChunk;
+
+        List<CompletableFuture<Chunk>> parts = new ArrayList<>(chunks);
+        for (int k = 0; k < chunks; ++k) {
+            int y0 = k * rowsPerChunk, y1 = Math.min(height, y0 + rowsPerChunk);
+            boolean last = k == chunks - 1;
+            parts.add(CompletableFuture.supplyAsync(() -> encode(rgb, width, y0, y1, last), executor));
+        }
+
+        bytesWritten = writeNanos = encodeNanos = 0;
+        long writeStart = System.nanoTime();
+        out.write(PngWriter.SIGNATURE);
+        byte[] header = PngWriter.header(width, height);
+        bytesWritten += PngWriter.SIGNATURE.length + PngWriter.writeChunk(out, "IHDR", header, 0, header.length,
+            PngWriter.crc("IHDR", header, 0, header.length));
+        bytesWritten += PngWriter.writeChunk(out, "IDAT", ZLIB_HEADER, 0, ZLIB_HEADER.length,
+            PngWriter.crc("IDAT", ZLIB_HEADER, 0, ZLIB_HEADER.length));
+        writeNanos += System.nanoTime() - writeStart;
+
+        long adler = 1;
+        for (CompletableFuture<Chunk> part : parts) {
+            Chunk chunk;
+            try {
+                chunk = part.join();
+            } catch (CompletionException e) {
+                throw new IOException("PNG chunk failed to encode", e.getCause());
+            }
+            encodeNanos += chunk.nanos;
+            adler = adler32Combine(adler, chunk.adler, chunk.rawLength);
+
+            writeStart = System.nanoTime();
+            bytesWritten += PngWriter.writeChunk(out, "IDAT", chunk.data, 0, chunk.length, chunk.crc);
+            writeNanos += System.nanoTime() - writeStart;
+        }
+
+        writeStart = System.nanoTime();
+        byte[] trailer = new byte[4];
+        PngWriter.putInt(trailer, 0, (int) adler);
+        bytesWritten += PngWriter.writeChunk(out, "IDAT", trailer, 0, trailer.length,
+            PngWriter.crc("IDAT", trailer, 0, trailer.length));
+        bytesWritten += PngWriter.writeChunk(out, "IEND", trailer, 0, 0, PngWriter.crc("IEND", trailer, 0, 0));
+        out.flush();
+        writeNanos += System.nanoTime() - writeStart;
+        totalNanos = System.nanoTime() - start;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getTotalMillis() {
+        return totalNanos / 1_000_000;
+    }
+
+    public String report() {
+        return String.format("PNG encoding: %d chunks on %d threads, filter+deflate %d ms summed over chunks, write %d ms, %d ms overall, %.1f MB.",
+            chunks, threads, encodeNanos / 1_000_000, writeNanos / 1_000_000, totalNanos / 1_000_000,
+            bytesWritten / (1024.0 * 1024.0));
+    }
+
+    private Chunk encode(int[] rgb, int width, int y0, int y1, boolean last) {
+        long start = System.nanoTime();
+        int stride = 1 + 3 * width;
+        int primer = Math.min(y0, (DICTIONARY + stride - 1) / stride);
+        byte[] raw = new byte[(y1 - y0 + primer) * stride];
+        for (int y = y0 - primer, k = 0; y < y1; ++y, k += stride) {
+            PngWriter.encodeRow(rgb, y * width, width, raw, k);
+        }
+
+        int offset = primer * stride, length = raw.length - offset;
+        Deflater deflater = new Deflater(level, true);
+        if (primer > 0) {
+            int dictionary = Math.min(DICTIONARY, offset);
+            deflater.setDictionary(raw, offset - dictionary, dictionary);
+        }
+        deflater.setInput(raw, offset, length);
+        if (last) {
+            deflater.finish();
+        }
+
+        byte[] data = new byte[Math.max(1024, length / 2)];
+        int size = 0;
+        while (true) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            size += last ? deflater.deflate(data, size, data.length - size)
+                : deflater.deflate(data, size, data.length - size, Deflater.SYNC_FLUSH);
+            if (last ? deflater.finished() : size < data.length) {
+                break;
+            }
+        }
+        deflater.end();
+
+        Adler32 adler = new Adler32();
+        adler.update(raw, offset, length);
+        return new Chunk(data, size, PngWriter.crc("IDAT", data, 0, size), adler.getValue(), length,
+            System.nanoTime() - start);
+    }
+
+    static long adler32Combine(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= 2L * ADLER_BASE) {
+            sum2 -= 2L * ADLER_BASE;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return (sum2 << 16) | sum1;
+    }
+
+    private static final class Chunk {
+        final byte[] data;
+        final int length, crc;
+        final long adler, rawLength, nanos;
+
+        Chunk(byte[] data, int length, int crc, long adler, long rawLength, long nanos) {
+            this.data = data;
+            this.length = length;
+            this.crc = crc;
+            this.adler = adler;
+            this.rawLength = rawLength;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+// One orbit Z(n) of the viewport centre C is iterated in BigDecimal and
+// rounded to doubles; every pixel then iterates only its offset from it,
+// d(n+1) = 2 Z(n) d(n) + d(n)^2 + dc, in plain double arithmetic. When the
+// full value Z(n) + d(n) gets smaller than d(n) itself, which is where the
+// offset loses precision and glitches appear, or the reference runs out,
+// the pixel is rebased onto the start of the orbit with d = Z(n) + d(n).
+public final class PerturbationReference implements MandelKernel.Line {
+
+    private static final int GUARD_DIGITS = 20;
+
+    private static volatile PerturbationReference installed;
+
+    private final BigDecimal centerRe, centerIm;
+    private final double[] orbitRe, orbitIm;
+    private final int length, digits;
+    private final long nanos;
+    private final LongAdder rebases = new LongAdder();
+
+    private PerturbationReference(BigDecimal centerRe, BigDecimal centerIm, int digits, int maxIterations) {
+        long start = System.nanoTime();
+        this.centerRe = centerRe;
+        this.centerIm = centerIm;
+        this.digits = digits;
+
+        MathContext context = new MathContext(digits);
+        BigDecimal four = BigDecimal.valueOf(4);
+        double[] re = new double[maxIterations + 1], im = new double[maxIterations + 1];
+        BigDecimal zRe = BigDecimal.ZERO, zIm = BigDecimal.ZERO;
+        int n = 0;
+        while (true) {
+            re[n] = zRe.doubleValue();
+            im[n] = zIm.doubleValue();
+            BigDecimal zRe2 = zRe.multiply(zRe, context), zIm2 = zIm.multiply(zIm, context);
+            if (n == maxIterations || zRe2.add(zIm2, context).compareTo(four) > 0) {
+                break;
+            }
+            BigDecimal reIm = zRe.multiply(zIm, context);
+            zRe = zRe2.subtract(zIm2, context).add(centerRe, context);
+            zIm = reIm.add(reIm, context).add(centerIm, context);
+            ++n;
+        }
+        this.length = n + 1;
+        this.orbitRe = re;
+        this.orbitIm = im;
+        this.nanos = System.nanoTime() - start;
+    }
+
+    // Parses the re/im rect exactly, references its centre and returns the
+    // rect as offsets from that centre, which is what the drivers then map
+    // pixels onto; rect is the text of the -r option or null for dims.
+    public static double[] install(String rect, double[] dims, int width, int height, int maxIterations) {
+        BigDecimal[] edges = edges(rect, dims);
+        BigDecimal half = new BigDecimal("0.5");
+        BigDecimal centerRe = edges[0].add(edges[1]).multiply(half), centerIm = edges[2].add(edges[3]).multiply(half);
+
+        int digits = Math.max(17, (int) Math.ceil(-Math.log10(spacing(edges, width, height))) + GUARD_DIGITS);
+        installed = new PerturbationReference(centerRe, centerIm, digits, maxIterations);
+
+        return new double[]{edges[0].subtract(centerRe).doubleValue(), edges[1].subtract(centerRe).doubleValue(),
+            edges[2].subtract(centerIm).doubleValue(), edges[3].subtract(centerIm).doubleValue()};
+    }
+
+    // Turns offsets from the installed centre back into the absolute rect.
+    static double[] absolute(double[] offsets) {
+        PerturbationReference reference = installed();
+        return absolute(reference.centerRe, reference.centerIm, offsets);
+    }
+
+    static double[] absolute(BigDecimal centerRe, BigDecimal centerIm, double[] offsets) {
+        return new double[]{centerRe.add(new BigDecimal(offsets[0])).doubleValue(),
+            centerRe.add(new BigDecimal(offsets[1])).doubleValue(),
+            centerIm.add(new BigDecimal(offsets[2])).doubleValue(),
+            centerIm.add(new BigDecimal(offsets[3])).doubleValue()};
+    }
+
+    static BigDecimal[] edges(String rect, double[] dims) {
+        BigDecimal[] edges = new BigDecimal[4];
+        String[] parts = rect == null ? null : rect.split(":");
+        for (int j = 0; j < 4; ++j) {
+            edges[j] = parts == null ? new BigDecimal(dims[j]) : new BigDecimal(parts[j].trim());
+        }
+        return edges;
+    }
+
+    static double spacing(BigDecimal[] edges, int width, int height) {
+        return Math.min(Math.abs(edges[1].subtract(edges[0]).doubleValue()) / width,
+            Math.abs(edges[3].subtract(edges[2]).doubleValue()) / height);
+    }
+
+    // Pixel spacing relative to the largest coordinate of the rect, which is
+    // how many of a coordinate's significant bits neighbouring pixels share.
+    static double relativeSpacing(String rect, double[] dims, int width, int height) {
+        BigDecimal[] edges = edges(rect, dims);
+        double magnitude = 0;
+        for (BigDecimal edge : edges) {
+            magnitude = Math.max(magnitude, Math.abs(edge.doubleValue()));
+        }
+        return spacing(edges, width, height) / Math.max(magnitude, Double.MIN_NORMAL);
+    }
+
+    static PerturbationReference installed() {
+        PerturbationReference reference = installed;
+        if (reference == null) {
+            throw new IllegalStateException("perturbation engine used without a reference orbit");
+        }
+        return reference;
+    }
+
+    // Distinguishes offset rects that belong to different reference centres.
+    public static String key() {
+        PerturbationReference reference = installed;
+        if (reference == null) {
+            return "";
+        }
+        String center = reference.centerRe.toString() + ":" + reference.centerIm.toString();
+        return UUID.nameUUIDFromBytes(center.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    public static String report() {
+        PerturbationReference reference = installed;
+        if (reference == null) {
+            return "No perturbation reference orbit.";
+        }
+        return String.format("Reference orbit: %d iterations at %d digits in %d ms, %d rebases.",
+            reference.length - 1, reference.digits, reference.nanos / 1_000_000, reference.rebases.sum());
+    }
+
+    @Override
+    public void generateIterations(double[] re, double[] im, int[] out, int count, int maxIterations) {
+        long rebased = 0;
+        int last = length - 1;
+        for (int i = 0; i < count; ++i) {
+            double cRe = re[i], cIm = im[i];
+            double dRe = 0, dIm = 0;
+            int m = 0, n = 0;
+            while (n < maxIterations) {
+                double zRe = orbitRe[m] + dRe, zIm = orbitIm[m] + dIm;
+                double magnitude = zRe * zRe + zIm * zIm;
+                if (magnitude > MandelKernel.BAILOUT_SQUARED) {
+                    break;
+                }
+                if (magnitude < dRe * dRe + dIm * dIm || m == last) {
+                    dRe = zRe;
+                    dIm = zIm;
+                    m = 0;
+                    ++rebased;
+                }
+                double oRe = orbitRe[m], oIm = orbitIm[m];
+                double nextRe = 2 * (oRe * dRe - oIm * dIm) + dRe * dRe - dIm * dIm + cRe;
+                dIm = 2 * (oRe * dIm + oIm * dRe) + 2 * dRe * dIm + cIm;
+                dRe = nextRe;
+                ++m;
+                ++n;
+            }
+            out[i] = n;
+        }
+        rebases.add(rebased);
+    }
+}
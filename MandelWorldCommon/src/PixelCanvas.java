@@ -0,0 +1,143 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+public class PixelCanvas implements MarianiSilver.Pixels {
+
+    private final int width, height;
+    private final int[] palette;
+    private final BufferedImage image;
+    private final int[] data;
+    private IterationFile counts;
+    private int[] iterations;
+
+    public PixelCanvas(int width, int height, int[] palette) {
+        this.width = width;
+        this.height = height;
+        this.palette = palette;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int[] getData() {
+        return data;
+    }
+
+    public void setCounts(IterationFile counts) {
+        this.counts = counts;
+    }
+
+    // Keeps every pixel's count in memory as well, for passes that read
+    // counts back: Mariani-Silver and the edge supersampler.
+    public void keepIterations() {
+        iterations = new int[width * height];
+    }
+
+    public int getIterations(int x, int y) {
+        return iterations[y * width + x];
+    }
+
+    public int color(int iterations) {
+        return palette[iterations];
+    }
+
+    public void setRow(int x0, int y, int[] iterations, int count) {
+        setRow(x0, y, iterations, 0, count);
+    }
+
+    public void setRow(int x0, int y, int[] iterations, int from, int count) {
+        int offset = y * width + x0;
+        for (int i = 0; i < count; ++i) {
+            data[offset + i] = palette[iterations[from + i]];
+        }
+        if (counts != null) {
+            counts.setRow(x0, y, iterations, from, count);
+        }
+        if (this.iterations != null) {
+            System.arraycopy(iterations, from, this.iterations, offset, count);
+        }
+    }
+
+    public void setColumn(int x, int y0, int[] iterations, int count) {
+        int offset = y0 * width + x;
+        for (int i = 0; i < count; ++i, offset += width) {
+            data[offset] = palette[iterations[i]];
+        }
+        if (counts != null) {
+            counts.setColumn(x, y0, iterations, count);
+        }
+        if (this.iterations != null) {
+            for (int i = 0; i < count; ++i) {
+                this.iterations[(y0 + i) * width + x] = iterations[i];
+            }
+        }
+    }
+
+    public void copyRow(int fromY, int toY) {
+        System.arraycopy(data, fromY * width, data, toY * width, width);
+        if (counts != null) {
+            counts.copyRow(fromY, toY);
+        }
+        if (iterations != null) {
+            System.arraycopy(iterations, fromY * width, iterations, toY * width, width);
+        }
+    }
+
+    @Override
+    public int get(int x, int y) {
+        return data[y * width + x];
+    }
+
+    @Override
+    public int count(int x, int y) {
+        if (iterations == null) {
+            throw new IllegalStateException("counts are not kept, call keepIterations() first");
+        }
+        return iterations[y * width + x];
+    }
+
+    @Override
+    public void set(int x, int y, int iterations) {
+        data[y * width + x] = palette[iterations];
+        if (counts != null) {
+            counts.set(x, y, iterations);
+        }
+        if (this.iterations != null) {
+            this.iterations[y * width + x] = iterations;
+        }
+    }
+
+    @Override
+    public void store(int x, int y, int value) {
+        data[y * width + x] = value;
+    }
+
+    @Override
+    public void fill(int fromX, int fromY, int x0, int y0, int x1, int y1) {
+        int value = data[fromY * width + fromX];
+        for (int y = y0; y < y1; ++y) {
+            Arrays.fill(data, y * width + x0, y * width + x1, value);
+        }
+        if (counts != null) {
+            counts.fill(fromX, fromY, x0, y0, x1, y1);
+        }
+        if (iterations != null) {
+            int iteration = iterations[fromY * width + fromX];
+            for (int y = y0; y < y1; ++y) {
+                Arrays.fill(iterations, y * width + x0, y * width + x1, iteration);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class PngWriter implements AutoCloseable {
+
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int CHUNK_SIZE = 64 * 1024;
+    static final int FILTER_SUB = 1;
+
+    private final OutputStream out;
+    private final int width, height;
+    private final Deflater deflater;
+    private final byte[] scanline;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength = 0;
+    private int rowsWritten = 0;
+    private long bytesWritten = 0;
+
+    public PngWriter(OutputStream out, int width, int height) throws IOException {
+        this(out, width, height, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public PngWriter(OutputStream out, int width, int height, int level) throws IOException {
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.deflater = new Deflater(level);
+        this.scanline = new byte[1 + 3 * width];
+
+        write(SIGNATURE, 0, SIGNATURE.length);
+        byte[] header = header(width, height);
+        writeChunk("IHDR", header, header.length);
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public void writeRows(int[] rgb, int offset, int rows) throws IOException {
+        for (int r = 0; r < rows; ++r, offset += width) {
+            encodeRow(rgb, offset, width, scanline, 0);
+            deflater.setInput(scanline);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+        }
+        rowsWritten += rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rowsWritten != height) {
+            throw new IOException("PNG has " + height + " rows, but " + rowsWritten + " were written");
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain();
+        }
+        flushChunk();
+        deflater.end();
+        writeChunk("IEND", chunk, 0);
+        out.flush();
+    }
+
+    static void encodeRow(int[] rgb, int offset, int width, byte[] scanline, int start) {
+        scanline[start] = FILTER_SUB;
+        int previous = 0;
+        for (int x = 0, k = start + 1; x < width; ++x, k += 3) {
+            int pixel = rgb[offset + x];
+            scanline[k] = (byte) ((pixel >> 16) - (previous >> 16));
+            scanline[k + 1] = (byte) ((pixel >> 8) - (previous >> 8));
+            scanline[k + 2] = (byte) (pixel - previous);
+            previous = pixel;
+        }
+    }
+
+    private void drain() throws IOException {
+        chunkLength += deflater.deflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+        if (chunkLength == CHUNK_SIZE) {
+            flushChunk();
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (chunkLength > 0) {
+            writeChunk("IDAT", chunk, chunkLength);
+            chunkLength = 0;
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        bytesWritten += writeChunk(out, type, data, 0, length, crc(type, data, 0, length));
+    }
+
+    private void write(byte[] data, int offset, int length) throws IOException {
+        out.write(data, offset, length);
+        bytesWritten += length;
+    }
+
+    static byte[] header(int width, int height) {
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 2;
+        return header;
+    }
+
+    static int crc(String type, byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(type.getBytes(StandardCharsets.US_ASCII));
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    static long writeChunk(OutputStream out, String type, byte[] data, int offset, int length, int crc)
+            throws IOException {
+        byte[] header = new byte[8];
+        putInt(header, 0, length);
+        System.arraycopy(type.getBytes(StandardCharsets.US_ASCII), 0, header, 4, 4);
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, crc);
+
+        out.write(header);
+        out.write(data, offset, length);
+        out.write(trailer);
+        return header.length + length + trailer.length;
+    }
+
+    static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Renders in passes over the same pixel grid, coarsest first: the pass at
+// step s iterates the pixels on multiples of s that no coarser pass has
+// covered, so every pixel is iterated exactly once and the last pass
+// completes the image a single pass would give. After each coarse pass the
+// 1/s image, every s-th pixel of every s-th row, is written as a preview.
+public class ProgressiveRender {
+
+    public static final int[] PASSES = {8, 4, 2, 1}, SINGLE = {1};
+
+    private static final int ROWS_PER_TASK = 4;
+
+    private final PixelCanvas canvas;
+    private final MandelKernel.Engine engine;
+    private final int maxIterations;
+    private final double[] dims;
+    private final int width, height;
+    private final String pathName;
+    private final int[] steps;
+
+    private final long[] passNanos, previewNanos;
+    private long start, mark, firstPreview;
+
+    // pathName is the final image; previews go next to it, none if null.
+    public ProgressiveRender(PixelCanvas canvas, MandelKernel.Engine engine, int maxIterations, double[] dims,
+                             int width, int height, String pathName, int[] steps) {
+        this.canvas = canvas;
+        this.engine = engine;
+        this.maxIterations = maxIterations;
+        this.dims = dims;
+        this.width = width;
+        this.height = height;
+        this.pathName = pathName;
+        this.steps = steps.clone();
+        this.passNanos = new long[steps.length];
+        this.previewNanos = new long[steps.length];
+    }
+
+    public static String previewPath(String pathName, int step) {
+        int dot = pathName.lastIndexOf('.');
+        String suffix = "-preview" + step;
+        return dot < 0 ? pathName + suffix : pathName.substring(0, dot) + suffix + pathName.substring(dot);
+    }
+
+    public int getPasses() {
+        return steps.length;
+    }
+
+    public int getTasks(int pass) {
+        int rows = (height + steps[pass] - 1) / steps[pass];
+        return (rows + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+    }
+
+    public void start() {
+        start = mark = System.nanoTime();
+    }
+
+    public void render(Executor executor) throws Exception {
+        start();
+        for (int pass = 0; pass < getPasses(); ++pass) {
+            CountDownLatch done = new CountDownLatch(getTasks(pass));
+            AtomicReference<RuntimeException> failure = new AtomicReference<>();
+            for (int task = 0; task < getTasks(pass); ++task) {
+                int index = task, current = pass;
+                executor.execute(() -> {
+                    try {
+                        renderTask(current, index);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            finishPass(pass, executor);
+        }
+    }
+
+    // Rows on a multiple of the coarser step already have every other
+    // pixel; all other rows of the pass are new.
+    public void renderTask(int pass, int index) {
+        int step = steps[pass], coarser = pass == 0 ? 0 : steps[pass - 1];
+        double[] re = new double[(width + step - 1) / step], im = new double[re.length];
+        int[] xs = new int[re.length], line = new int[re.length];
+        int firstRow = index * ROWS_PER_TASK * step;
+        for (int y = firstRow; y < Math.min(height, firstRow + ROWS_PER_TASK * step); y += step) {
+            boolean covered = coarser > 0 && y % coarser == 0;
+            int count = 0;
+            for (int x = 0; x < width; x += step) {
+                if (covered && x % coarser == 0) {
+                    continue;
+                }
+                xs[count] = x;
+                re[count] = dims[0] + ((double) x / width) * (dims[1] - dims[0]);
+                im[count++] = dims[2] + ((double) y / height) * (dims[3] - dims[2]);
+            }
+            MandelKernel.generateIterations(engine, re, im, line, count, maxIterations);
+            for (int i = 0; i < count; ++i) {
+                canvas.set(xs[i], y, line[i]);
+            }
+        }
+    }
+
+    public void finishPass(int pass, Executor executor) throws IOException {
+        long now = System.nanoTime();
+        passNanos[pass] = now - mark;
+        int step = steps[pass];
+        if (step > 1 && pathName != null) {
+            int previewWidth = (width + step - 1) / step, previewHeight = (height + step - 1) / step;
+            int[] rgb = new int[previewWidth * previewHeight];
+            for (int j = 0; j < previewHeight; ++j) {
+                for (int i = 0; i < previewWidth; ++i) {
+                    rgb[j * previewWidth + i] = canvas.get(i * step, j * step);
+                }
+            }
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(previewPath(pathName, step)), 1 << 16)) {
+                new ParallelPngEncoder(1).write(rgb, previewWidth, previewHeight, out, executor);
+            }
+            if (firstPreview == 0) {
+                firstPreview = System.nanoTime() - start;
+            }
+        }
+        mark = System.nanoTime();
+        previewNanos[pass] = mark - now;
+    }
+
+    public long getTotalMillis() {
+        return (mark - start) / 1_000_000;
+    }
+
+    public String report() {
+        StringBuilder passes = new StringBuilder();
+        long previews = 0;
+        for (int pass = 0; pass < steps.length; ++pass) {
+            passes.append(pass == 0 ? "" : ", ").append("1/").append(steps[pass]).append(' ')
+                .append(passNanos[pass] / 1_000_000).append(" ms");
+            previews += previewNanos[pass];
+        }
+        return String.format("Progressive: first preview after %d ms; passes %s; previews %d ms; total %d ms.",
+            firstPreview / 1_000_000, passes, previews / 1_000_000, getTotalMillis());
+    }
+
+    // single rendered the same view in one pass into its own canvas.
+    public String compare(ProgressiveRender single) {
+        int[] ours = canvas.getData(), theirs = single.canvas.getData();
+        long differing = 0;
+        for (int i = 0; i < ours.length; ++i) {
+            differing += ours[i] != theirs[i] ? 1 : 0;
+        }
+        long overhead = getTotalMillis() - single.getTotalMillis();
+        return String.format("Single pass: %d ms, progressive overhead %+d ms (%+.1f%%), %d pixels differ.",
+            single.getTotalMillis(), overhead, single.getTotalMillis() == 0 ? 0.0 : 100.0 * overhead / single.getTotalMillis(),
+            differing);
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Row y samples im0 + (y / height) * (im1 - im0), so rows y and K - y are
+// conjugate whenever the real axis falls on K / 2 for an integer K (to
+// within COINCIDENCE of a pixel). Only the contiguous band [from, to) is
+// iterated, the half nearer the far edge plus the rows without a partner;
+// every other row is copied from K - y. The two rows' im are each rounded
+// on their own, so they are negatives of each other only to within an ulp
+// or so, and a pixel whose orbit is that sensitive can come out with a
+// different count than iterating its row would give; setEnabled(false)
+// iterates every row instead.
+public class RealAxisMirror {
+
+    public static final RealAxisMirror NONE = new RealAxisMirror(0, 0, 0, 0);
+
+    private static final double COINCIDENCE = 1e-6;
+    private static final int ROWS_PER_TASK = 16;
+
+    private static volatile boolean enabled = true;
+
+    private final int height, sum, from, to;
+    private long copyNanos;
+
+    private RealAxisMirror(int height, int sum, int from, int to) {
+        this.height = height;
+        this.sum = sum;
+        this.from = from;
+        this.to = to;
+    }
+
+    // Offset engines iterate from an off-axis centre, so their rows are not
+    // conjugate even when the rect is.
+    public static RealAxisMirror detect(MandelKernel.Engine engine, double[] dims, int height) {
+        if (!enabled || engine.isOffset() || dims[3] == dims[2]) {
+            return NONE;
+        }
+        double axis = -dims[2] / (dims[3] - dims[2]) * height;
+        long sum = Math.round(2 * axis);
+        if (Math.abs(2 * axis - sum) > COINCIDENCE || sum < 1 || sum > 2L * (height - 1) - 1) {
+            return NONE;
+        }
+        int k = (int) sum;
+        return k >= height - 1 ? new RealAxisMirror(height, k, 0, k / 2 + 1)
+            : new RealAxisMirror(height, k, (k + 1) / 2, height);
+    }
+
+    public static void setEnabled(boolean mirror) {
+        enabled = mirror;
+    }
+
+    public boolean isMirrored(int y) {
+        return this != NONE && (y < from || y >= to);
+    }
+
+    public int getFrom() {
+        return this == NONE ? 0 : from;
+    }
+
+    public int getTo() {
+        return this == NONE ? Integer.MAX_VALUE : to;
+    }
+
+    public int getMirroredRows() {
+        return this == NONE ? 0 : height - (to - from);
+    }
+
+    // Copies on the driver's executor, which has to be idle by now: every
+    // row of the band must be done before its mirror image is taken.
+    public void copy(PixelCanvas canvas, Executor executor) throws InterruptedException {
+        if (this == NONE) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<int[]> ranges = new ArrayList<>();
+        addRanges(ranges, 0, from);
+        addRanges(ranges, to, height);
+        CountDownLatch done = new CountDownLatch(ranges.size());
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        for (int[] range : ranges) {
+            executor.execute(() -> {
+                try {
+                    copyRows(canvas, range[0], range[1]);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        copyNanos = System.nanoTime() - start;
+    }
+
+    public String report() {
+        if (this == NONE) {
+            return "Real-axis symmetry: no mirrored rows.";
+        }
+        return String.format("Real-axis symmetry: %d of %d rows mirrored (%.1f%%), iterated rows %d-%d, copied in %.1f ms.",
+            getMirroredRows(), height, 100.0 * getMirroredRows() / height, from, to - 1, copyNanos / 1e6);
+    }
+
+    private void copyRows(PixelCanvas canvas, int y0, int y1) {
+        for (int y = y0; y < y1; ++y) {
+            canvas.copyRow(sum - y, y);
+        }
+    }
+
+    private static void addRanges(List<int[]> ranges, int y0, int y1) {
+        for (int y = y0; y < y1; y += ROWS_PER_TASK) {
+            ranges.add(new int[]{y, Math.min(y1, y + ROWS_PER_TASK)});
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+// Times renders for every thread count x granularity in one JVM and prints
+// one CSV row per pair. After the warm-up renders, repetitions run in
+// rounds, each round visiting every pair once, so drift over the sweep
+// spreads over all pairs instead of landing on the last ones. Speedup is
+// the median at one thread over the median at p threads, for the same
+// granularity; one thread is always measured.
+public class ScalabilitySweep {
+
+    public interface Render {
+        // Renders the view once and returns the nanoseconds to time.
+        long render(int threads, int granularity) throws Exception;
+    }
+
+    private final int[] threads, granularities;
+    private final int repetitions, warmups;
+
+    public ScalabilitySweep(int[] threads, int[] granularities, int repetitions, int warmups) {
+        TreeSet<Integer> counts = new TreeSet<>();
+        counts.add(1);
+        for (int count : threads) {
+            counts.add(count);
+        }
+        this.threads = counts.stream().mapToInt(Integer::intValue).toArray();
+        this.granularities = granularities.clone();
+        this.repetitions = repetitions;
+        this.warmups = warmups;
+    }
+
+    // Parses the value of the sweep option, "T1,T2,..:G1,G2,..[:R[:W]]".
+    public static ScalabilitySweep parse(String text) {
+        String[] parts = text.split(":");
+        if (parts.length < 2) {
+            throw new NumberFormatException("a sweep needs thread counts and granularities: " + text);
+        }
+        int[] threads = list(parts[0]), granularities = list(parts[1]);
+        int repetitions = parts.length > 2 ? Integer.parseInt(parts[2].trim()) : 5;
+        int warmups = parts.length > 3 ? Integer.parseInt(parts[3].trim()) : 3;
+        if (repetitions < 1 || warmups < 0 || Arrays.stream(threads).anyMatch(t -> t < 1)
+            || Arrays.stream(granularities).anyMatch(g -> g < 1)) {
+            throw new NumberFormatException("a sweep needs positive counts and at least one repetition: " + text);
+        }
+        return new ScalabilitySweep(threads, granularities, repetitions, warmups);
+    }
+
+    // Warms up with the widest configuration, the one that exercises the
+    // most code (pool, hand-off, every worker).
+    public void run(Render render, PrintStream out) throws Exception {
+        for (int k = 0; k < warmups; ++k) {
+            render.render(threads[threads.length - 1], granularities[0]);
+        }
+        long[][][] nanos = new long[granularities.length][threads.length][repetitions];
+        for (int round = 0; round < repetitions; ++round) {
+            for (int g = 0; g < granularities.length; ++g) {
+                for (int t = 0; t < threads.length; ++t) {
+                    nanos[g][t][round] = render.render(threads[t], granularities[g]);
+                }
+            }
+        }
+
+        out.println("threads,granularity,runs,median_ms,min_ms,p95_ms,speedup,efficiency");
+        for (int g = 0; g < granularities.length; ++g) {
+            double single = median(nanos[g][0]);
+            for (int t = 0; t < threads.length; ++t) {
+                long[] sorted = nanos[g][t].clone();
+                Arrays.sort(sorted);
+                double median = median(sorted), speedup = single / median;
+                out.printf("%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f%n", threads[t], granularities[g], repetitions,
+                    median / 1e6, sorted[0] / 1e6, percentile(sorted, 0.95) / 1e6, speedup, speedup / threads[t]);
+            }
+        }
+        out.flush();
+    }
+
+    private static int[] list(String text) {
+        return Arrays.stream(text.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static double median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
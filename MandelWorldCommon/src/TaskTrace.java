@@ -0,0 +1,180 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Records every render task (strip, tile) as a span with its thread, start
+// and end, pixel count and iterations. Spans go to a list per thread, like
+// WorkerStats, and when the JVM runs with -XX:StartFlightRecording each
+// span also commits a JFR event; without a recording JFR is left alone, as
+// bringing it up would cost more than the whole trace. While tracing is
+// off start() returns null and workers skip everything else, so a
+// disabled trace costs one static read per task.
+public final class TaskTrace {
+
+    private static boolean enabled = false, events = false;
+    private static final List<List<Span>> all = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<List<Span>> local = ThreadLocal.withInitial(() -> {
+        List<Span> spans = new ArrayList<>();
+        all.add(spans);
+        return spans;
+    });
+
+    private TaskTrace() {
+    }
+
+    public static void enable() {
+        enabled = true;
+        events = FlightRecorder.isInitialized();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static Span start() {
+        return enabled ? new Span() : null;
+    }
+
+    public static long sum(int[] iterations, int count) {
+        long total = 0;
+        for (int i = 0; i < count; ++i) {
+            total += iterations[i];
+        }
+        return total;
+    }
+
+    public static final class Span {
+        private final Thread thread = Thread.currentThread();
+        private final TaskEvent event = events ? new TaskEvent() : null;
+        private final long start;
+        private long end, pixels, iterations;
+        private String name;
+
+        private Span() {
+            if (event != null) {
+                event.begin();
+            }
+            start = System.nanoTime();
+        }
+
+        public void finish(String name, long pixels, long iterations) {
+            end = System.nanoTime();
+            this.name = name;
+            this.pixels = pixels;
+            this.iterations = iterations;
+            if (event == null) {
+                local.get().add(this);
+                return;
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.task = name;
+                event.pixels = pixels;
+                event.iterations = iterations;
+                event.commit();
+            }
+            local.get().add(this);
+        }
+    }
+
+    @Name("mandelworld.Task")
+    @Label("Render Task")
+    @Category("MandelWorld")
+    @Description("One strip or tile of a render")
+    static class TaskEvent extends Event {
+        @Label("Task")
+        String task;
+
+        @Label("Pixels")
+        long pixels;
+
+        @Label("Iterations")
+        long iterations;
+    }
+
+    // Chrome's about:tracing (and Perfetto) format: one complete event per
+    // span in microseconds from the first start, plus the thread names.
+    public static void writeChromeTrace(String pathName) throws IOException {
+        long origin = origin();
+        try (Writer out = new BufferedWriter(new FileWriter(pathName), 1 << 16)) {
+            out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            boolean first = true;
+            for (List<Span> spans : all) {
+                if (spans.isEmpty()) {
+                    continue;
+                }
+                Thread thread = spans.get(0).thread;
+                out.write(String.format("%s%n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":%d,\"args\":{\"name\":\"%s\"}}",
+                    first ? "" : ",", thread.getId(), escape(thread.getName())));
+                first = false;
+                for (Span span : spans) {
+                    out.write(String.format(",%n{\"name\":\"%s\",\"cat\":\"task\",\"ph\":\"X\",\"pid\":1,\"tid\":%d,"
+                            + "\"ts\":%.3f,\"dur\":%.3f,\"args\":{\"pixels\":%d,\"iterations\":%d}}",
+                        escape(span.name), thread.getId(), (span.start - origin) / 1e3, (span.end - span.start) / 1e3,
+                        span.pixels, span.iterations));
+                }
+            }
+            out.write(String.format("%n]}%n"));
+        }
+    }
+
+    // Idle time is the part of the traced window, first start to last end,
+    // a thread spent outside its tasks; threads that ran no task are not
+    // listed.
+    public static String report() {
+        long origin = origin(), finish = origin, tasks = 0, maxBusy = 0, sumBusy = 0;
+        int threads = 0;
+        for (List<Span> spans : all) {
+            for (Span span : spans) {
+                finish = Math.max(finish, span.end);
+            }
+        }
+        StringBuilder lines = new StringBuilder();
+        for (List<Span> spans : all) {
+            if (spans.isEmpty()) {
+                continue;
+            }
+            long busy = 0, iterations = 0;
+            for (Span span : spans) {
+                busy += span.end - span.start;
+                iterations += span.iterations;
+            }
+            ++threads;
+            tasks += spans.size();
+            maxBusy = Math.max(maxBusy, busy);
+            sumBusy += busy;
+            lines.append(String.format("%n%s: %d tasks, busy %.1f ms, idle %.1f ms, %.1f Miterations/s.",
+                spans.get(0).thread.getName(), spans.size(), busy / 1e6, (finish - origin - busy) / 1e6,
+                busy == 0 ? 0.0 : iterations * 1e3 / busy));
+        }
+        double meanBusy = threads == 0 ? 0 : (double) sumBusy / threads;
+        return String.format("Trace: %d tasks on %d threads over %.1f ms, load imbalance %.2f (max busy %.1f ms, mean %.1f ms).",
+            tasks, threads, (finish - origin) / 1e6, meanBusy == 0 ? 0.0 : maxBusy / meanBusy, maxBusy / 1e6,
+            meanBusy / 1e6) + lines;
+    }
+
+    private static long origin() {
+        long origin = Long.MAX_VALUE;
+        for (List<Span> spans : all) {
+            for (Span span : spans) {
+                origin = Math.min(origin, span.start);
+            }
+        }
+        return origin == Long.MAX_VALUE ? 0 : origin;
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tiles of TILE x TILE iteration counts on disk, one file per tile, with a
+// byte-bounded LRU of decoded tiles in memory on top.
+public class TileCache {
+
+    public static final int TILE = 64;
+    public static final long DEFAULT_MEMORY = 64L << 20;
+
+    private final Path directory;
+    private final long memoryLimit;
+    private final LinkedHashMap<String, int[]> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes = 0;
+
+    private final AtomicLong memoryHits = new AtomicLong(), diskHits = new AtomicLong(), misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong(), bytesWritten = new AtomicLong();
+
+    public TileCache(String directory) {
+        this(directory, DEFAULT_MEMORY);
+    }
+
+    public TileCache(String directory, long memoryLimit) {
+        this.directory = Paths.get(directory);
+        this.memoryLimit = memoryLimit;
+    }
+
+    public static String key(int maxIterations, String level, long tx, long ty) {
+        return maxIterations + "/" + level + "/" + ty + "_" + tx;
+    }
+
+    public int[] get(String key) throws IOException {
+        synchronized (memory) {
+            int[] tile = memory.get(key);
+            if (tile != null) {
+                memoryHits.incrementAndGet();
+                return tile;
+            }
+        }
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file(key));
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+        // A tile cut short by a crash or a full disk is recomputed and
+        // written again.
+        if (bytes.length != TILE * TILE * 4) {
+            misses.incrementAndGet();
+            return null;
+        }
+        int[] tile = new int[TILE * TILE];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(tile);
+        diskHits.incrementAndGet();
+        remember(key, tile);
+        return tile;
+    }
+
+    public void put(String key, int[] tile) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(tile.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asIntBuffer().put(tile);
+
+        Path file = file(key);
+        Files.createDirectories(file.getParent());
+        Path temporary = Files.createTempFile(file.getParent(), "tile", ".tmp");
+        Files.write(temporary, bytes.array());
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        bytesWritten.addAndGet(bytes.capacity());
+        remember(key, tile);
+    }
+
+    public String report() {
+        long hits = memoryHits.get() + diskHits.get(), total = hits + misses.get();
+        double memoryMb;
+        synchronized (memory) {
+            memoryMb = memoryBytes / (1024.0 * 1024.0);
+        }
+        return String.format("Tile cache: %d of %d tiles hit (%.1f%%; %d memory, %d disk), %d computed, %.1f MB cached in memory, %.1f MB written to disk, %d evictions.",
+            hits, total, total == 0 ? 0.0 : 100.0 * hits / total, memoryHits.get(), diskHits.get(), misses.get(),
+            memoryMb, bytesWritten.get() / (1024.0 * 1024.0), evictions.get());
+    }
+
+    private void remember(String key, int[] tile) {
+        synchronized (memory) {
+            if (memory.put(key, tile) == null) {
+                memoryBytes += tile.length * 4L;
+            }
+            Iterator<Map.Entry<String, int[]>> eldest = memory.entrySet().iterator();
+            while (memoryBytes > memoryLimit && eldest.hasNext()) {
+                memoryBytes -= eldest.next().getValue().length * 4L;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + ".tile");
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Lays the viewport over a global grid of cache tiles. The grid is fixed by
+// the pixel spacing (to ten significant digits) and by where the viewport
+// origin falls within a pixel (to 1/1024 of a pixel), so repeated renders
+// of a region and pans by whole pixels at the same scale land on the same
+// tiles whatever the thread count.
+public class TileRender {
+
+    private static final int PHASES = 1024;
+
+    private final TileCache cache;
+    private final MandelKernel.Engine engine;
+    private final int maxIterations;
+    private final double[] dims;
+    private final int width, height;
+    private final PixelCanvas canvas;
+
+    private final String level;
+    private final long originX, originY, firstTileX, firstTileY;
+    private final int tilesX, tilesY;
+
+    public TileRender(TileCache cache, MandelKernel.Engine engine, int maxIterations, double[] dims,
+                      int width, int height, PixelCanvas canvas) {
+        this.cache = cache;
+        this.engine = engine;
+        this.maxIterations = maxIterations;
+        this.dims = dims;
+        this.width = width;
+        this.height = height;
+        this.canvas = canvas;
+
+        double dx = (dims[1] - dims[0]) / width, dy = (dims[3] - dims[2]) / height;
+        long[] re = grid(dims[0], dx), im = grid(dims[2], dy);
+        originX = re[0];
+        originY = im[0];
+        level = String.format(Locale.ROOT, "%.10e_%.10e_%d_%d", dx, dy, re[1], im[1])
+            + (engine == MandelKernel.Engine.PERTURBATION ? "_" + PerturbationReference.key()
+            : engine == MandelKernel.Engine.DOUBLEDOUBLE ? "_dd" + DoubleDoubleKernel.key() : "");
+        firstTileX = Math.floorDiv(originX, TileCache.TILE);
+        firstTileY = Math.floorDiv(originY, TileCache.TILE);
+        tilesX = (int) (Math.floorDiv(originX + width - 1, TileCache.TILE) - firstTileX + 1);
+        tilesY = (int) (Math.floorDiv(originY + height - 1, TileCache.TILE) - firstTileY + 1);
+    }
+
+    public int getTiles() {
+        return tilesX * tilesY;
+    }
+
+    public void render(Executor executor) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(getTiles());
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        for (int tile = 0; tile < getTiles(); ++tile) {
+            int index = tile;
+            executor.execute(() -> {
+                try {
+                    renderTile(index);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    public void renderTile(int index) {
+        long tileX = firstTileX + index % tilesX, tileY = firstTileY + index / tilesX;
+        int left = (int) (tileX * TileCache.TILE - originX), top = (int) (tileY * TileCache.TILE - originY);
+        String key = TileCache.key(maxIterations, level, tileX, tileY);
+        try {
+            int[] tile = cache.get(key);
+            if (tile == null) {
+                tile = compute(left, top);
+                cache.put(key, tile);
+            }
+
+            int x0 = Math.max(0, left), x1 = Math.min(width, left + TileCache.TILE);
+            for (int y = Math.max(0, top); y < Math.min(height, top + TileCache.TILE); ++y) {
+                canvas.setRow(x0, y, tile, (y - top) * TileCache.TILE + x0 - left, x1 - x0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Pixels of the tile that fall outside the image are still evaluated
+    // with the viewport's own mapping, so a later pan can reuse them.
+    private int[] compute(int left, int top) {
+        int[] tile = new int[TileCache.TILE * TileCache.TILE];
+        double[] re = new double[TileCache.TILE], im = new double[TileCache.TILE];
+        int[] line = new int[TileCache.TILE];
+        MandelKernel.fillAxis(re, left, TileCache.TILE, dims[0], dims[1], width);
+        for (int r = 0; r < TileCache.TILE; ++r) {
+            Arrays.fill(im, dims[2] + ((double) (top + r) / height) * (dims[3] - dims[2]));
+            MandelKernel.generateIterations(engine, re, im, line, TileCache.TILE, maxIterations);
+            System.arraycopy(line, 0, tile, r * TileCache.TILE, TileCache.TILE);
+        }
+        return tile;
+    }
+
+    private static long[] grid(double start, double spacing) {
+        double position = start / spacing;
+        long index = (long) Math.floor(position);
+        long phase = Math.round((position - index) * PHASES);
+        if (phase == PHASES) {
+            ++index;
+            phase = 0;
+        }
+        return new long[]{index, phase};
+    }
+}
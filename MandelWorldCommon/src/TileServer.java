@@ -0,0 +1,316 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Serves GET /tiles/{z}/{x}/{y}.png and GET /metrics on localhost. Tile
+// z/x/y is the x-th of 2^z columns and y-th of 2^z rows of the square
+// re -2.5..1.5, im -2..2, at TILE_SIZE pixels, mapped like the drivers map
+// a rect. Encoded tiles are kept in an LRU; concurrent requests for a tile
+// that is not cached share one render; a render that would push the
+// pending renders past the queue limit is refused with 503 instead. The
+// requests themselves wait for a handler thread in a queue as long as
+// there are handlers, and a request that finds it full is answered 503 on
+// the spot rather than queued without bound.
+public class TileServer {
+
+    public static final int TILE_SIZE = 256;
+
+    // Tiles iterate absolute doubles, so zoom stops well before the pixel
+    // spacing reaches their resolution.
+    private static final int MAX_ZOOM = 36;
+    private static final double WORLD_RE = -2.5, WORLD_IM = -2.0, WORLD_SIZE = 4.0;
+    private static final int LATENCY_WINDOW = 4096;
+
+    private final MandelKernel.Engine engine;
+    private final int maxIterations;
+    private final int[] palette;
+    private final Executor pool;
+    private final int queueLimit;
+
+    private final Map<String, byte[]> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder requests = new LongAdder(), cacheHits = new LongAdder(), coalesced = new LongAdder();
+    private final LongAdder rendered = new LongAdder(), shed = new LongAdder(), errors = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long latencyCount;
+    private final AtomicInteger maxPending = new AtomicInteger();
+    private final long started = System.nanoTime();
+    private final ThreadLocal<Boolean> overloaded = ThreadLocal.withInitial(() -> false);
+    private HttpServer server;
+    private ThreadPoolExecutor handlerPool;
+
+    public TileServer(MandelKernel.Engine engine, int maxIterations, int[] palette, Executor pool,
+                      int queueLimit, int cacheTiles) {
+        this.engine = engine;
+        this.maxIterations = maxIterations;
+        this.palette = palette;
+        this.pool = pool;
+        this.queueLimit = Math.max(1, queueLimit);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > cacheTiles;
+            }
+        };
+    }
+
+    // Parses the value of the server option, "PORT[:QUEUE[:CACHE[:HANDLERS]]]".
+    public static int[] parse(String text) {
+        String[] parts = text.split(":");
+        int port = Integer.parseInt(parts[0].trim());
+        int queue = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 64;
+        int cache = parts.length > 2 ? Integer.parseInt(parts[2].trim()) : 4096;
+        int handlers = parts.length > 3 ? Integer.parseInt(parts[3].trim()) : 16;
+        if (port < 0 || port > 65535 || queue < 1 || cache < 0 || handlers < 1) {
+            throw new NumberFormatException("a tile server needs a port, a queue of at least 1, a cache of at least 0"
+                + " and at least 1 handler: " + text);
+        }
+        return new int[]{port, queue, cache, handlers};
+    }
+
+    // Requests are handled on their own threads, which wait for renders on
+    // the shared pool. A request the handler queue has no room for is run
+    // on the server's dispatcher thread instead, marked overloaded, which
+    // only answers 503.
+    public void start(int port, int handlers) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/tiles/", this::handleTile);
+        server.createContext("/metrics", this::handleMetrics);
+        handlers = Math.max(1, handlers);
+        handlerPool = new ThreadPoolExecutor(handlers, handlers, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(handlers), (task, executor) -> {
+                overloaded.set(true);
+                try {
+                    task.run();
+                } finally {
+                    overloaded.set(false);
+                }
+            });
+        server.setExecutor(handlerPool);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        handlerPool.shutdown();
+    }
+
+    private void handleTile(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.increment();
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, "text/plain", bytes("GET only\n"));
+                return;
+            }
+            int[] zxy = tile(exchange.getRequestURI().getPath());
+            if (zxy == null) {
+                send(exchange, 404, "text/plain", bytes("no such tile, use /tiles/{z}/{x}/{y}.png with z <= " + MAX_ZOOM + "\n"));
+                return;
+            }
+            if (overloaded.get()) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, "text/plain", bytes("request queue full\n"));
+                return;
+            }
+            String key = zxy[0] + "/" + zxy[1] + "/" + zxy[2];
+            byte[] png;
+            synchronized (cache) {
+                png = cache.get(key);
+            }
+            if (png != null) {
+                cacheHits.increment();
+            } else {
+                CompletableFuture<byte[]> render = join(key, zxy);
+                if (render == null) {
+                    shed.increment();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, 503, "text/plain", bytes("render queue full\n"));
+                    return;
+                }
+                png = render.get();
+            }
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=86400");
+            send(exchange, 200, "image/png", png);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errors.increment();
+            send(exchange, 500, "text/plain", bytes("interrupted\n"));
+        } catch (ExecutionException e) {
+            errors.increment();
+            send(exchange, 500, "text/plain", bytes("render failed: " + e.getCause() + "\n"));
+        } finally {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    // Joins the render already in flight for the key, or starts one if
+    // the queue has room; null means the request is shed. A render leaves
+    // inFlight and the pending count before its future completes, so the
+    // requests it wakes see the queue it left.
+    private CompletableFuture<byte[]> join(String key, int[] zxy) {
+        CompletableFuture<byte[]> existing = inFlight.get(key);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+        int depth = pending.incrementAndGet();
+        if (depth > queueLimit) {
+            pending.decrementAndGet();
+            return null;
+        }
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            pending.decrementAndGet();
+            coalesced.increment();
+            return existing;
+        }
+        // The render that just left inFlight may have cached the tile
+        // between our cache miss and putIfAbsent.
+        byte[] cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            inFlight.remove(key);
+            pending.decrementAndGet();
+            cacheHits.increment();
+            mine.complete(cached);
+            return mine;
+        }
+        maxPending.accumulateAndGet(depth, Math::max);
+        pool.execute(() -> {
+            byte[] png = null;
+            Throwable failure = null;
+            try {
+                png = render(zxy[0], zxy[1], zxy[2]);
+                synchronized (cache) {
+                    cache.put(key, png);
+                }
+                rendered.increment();
+            } catch (Throwable e) {
+                failure = e;
+            }
+            inFlight.remove(key);
+            pending.decrementAndGet();
+            if (failure != null) {
+                mine.completeExceptionally(failure);
+            } else {
+                mine.complete(png);
+            }
+        });
+        return mine;
+    }
+
+    private byte[] render(int z, int x, int y) throws IOException {
+        double size = WORLD_SIZE / (1L << z);
+        double[] dims = {WORLD_RE + x * size, WORLD_RE + (x + 1) * size, WORLD_IM + y * size, WORLD_IM + (y + 1) * size};
+        PixelCanvas canvas = new PixelCanvas(TILE_SIZE, TILE_SIZE, palette);
+        double[] re = new double[TILE_SIZE], im = new double[TILE_SIZE];
+        int[] line = new int[TILE_SIZE];
+        MandelKernel.fillAxis(re, 0, TILE_SIZE, dims[0], dims[1], TILE_SIZE);
+        for (int row = 0; row < TILE_SIZE; ++row) {
+            Arrays.fill(im, dims[2] + ((double) row / TILE_SIZE) * (dims[3] - dims[2]));
+            MandelKernel.generateIterations(engine, re, im, line, TILE_SIZE, maxIterations);
+            canvas.setRow(0, row, line, TILE_SIZE);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+        try (PngWriter png = new PngWriter(out, TILE_SIZE, TILE_SIZE)) {
+            png.writeRows(canvas.getData(), 0, TILE_SIZE);
+        }
+        return out.toByteArray();
+    }
+
+    private static int[] tile(String path) {
+        String[] parts = path.substring("/tiles/".length()).split("/");
+        if (parts.length != 3 || !parts[2].endsWith(".png")) {
+            return null;
+        }
+        try {
+            int z = Integer.parseInt(parts[0]), x = Integer.parseInt(parts[1]);
+            int y = Integer.parseInt(parts[2].substring(0, parts[2].length() - ".png".length()));
+            long side = 1L << Math.min(z, MAX_ZOOM);
+            return z < 0 || z > MAX_ZOOM || x < 0 || x >= side || y < 0 || y >= side ? null : new int[]{z, x, y};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        send(exchange, 200, "application/json", bytes(metrics()));
+    }
+
+    // Latency percentiles are over the last LATENCY_WINDOW tile requests.
+    public String metrics() {
+        long[] window;
+        synchronized (latencies) {
+            window = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_WINDOW));
+        }
+        Arrays.sort(window);
+        int cached;
+        synchronized (cache) {
+            cached = cache.size();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        return String.format("{\"uptime_s\":%.1f,\"requests\":%d,\"requests_per_s\":%.2f,\"renders_per_s\":%.2f,"
+                + "\"cache_hits\":%d,\"coalesced\":%d,\"rendered\":%d,\"shed\":%d,\"rejected\":%d,\"errors\":%d,"
+                + "\"request_queue\":%d,\"queue_depth\":%d,\"queue_depth_max\":%d,\"queue_limit\":%d,\"cached_tiles\":%d,"
+                + "\"latency_ms\":{\"window\":%d,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}}%n",
+            seconds, requests.sum(), requests.sum() / seconds, rendered.sum() / seconds,
+            cacheHits.sum(), coalesced.sum(), rendered.sum(), shed.sum(), rejected.sum(), errors.sum(),
+            handlerPool == null ? 0 : handlerPool.getQueue().size(), pending.get(), maxPending.get(), queueLimit, cached,
+            window.length, percentile(window, 0.50) / 1e6, percentile(window, 0.90) / 1e6,
+            percentile(window, 0.99) / 1e6, window.length == 0 ? 0.0 : window[window.length - 1] / 1e6);
+    }
+
+    private void record(long nanos) {
+        synchronized (latencies) {
+            latencies[(int) (latencyCount++ % LATENCY_WINDOW)] = nanos;
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Frames zoom geometrically from the start rect to the end rect around the
+// point both rects share. A pixel whose sample point coincides with one of
+// the previous frame (to within COINCIDENCE of a pixel) takes its count from
+// there, which is a quarter of every frame for power-of-two steps about a
+// sample point; all other pixels are iterated with the frame's own mapping.
+public class ZoomSequence {
+
+    private static final double COINCIDENCE = 1e-6;
+    private static final int ROWS_PER_TASK = 8;
+
+    private final MandelKernel.Engine engine;
+    private final int maxIterations;
+    private final double[] start, end;
+    private final int frames, width, height;
+    private final int[] palette;
+
+    private int[] previous, current;
+    private double[] previousDims;
+    private long reused;
+
+    public ZoomSequence(MandelKernel.Engine engine, int maxIterations, double[] start, double[] end,
+                        int frames, int width, int height, int[] palette) {
+        this.engine = engine;
+        this.maxIterations = maxIterations;
+        this.start = start.clone();
+        this.end = end.clone();
+        this.frames = Math.max(1, frames);
+        this.width = width;
+        this.height = height;
+        this.palette = palette;
+        this.previous = new int[width * height];
+        this.current = new int[width * height];
+    }
+
+    public static String framePath(String pathName, int frame) {
+        int dot = pathName.lastIndexOf('.');
+        String suffix = String.format("-%04d", frame);
+        return dot < 0 ? pathName + suffix : pathName.substring(0, dot) + suffix + pathName.substring(dot);
+    }
+
+    public double[] frame(int frame) {
+        double t = frames == 1 ? 0 : (double) frame / (frames - 1);
+        double[] dims = new double[4];
+        for (int axis = 0; axis < 4; axis += 2) {
+            double ratio = (end[axis + 1] - end[axis]) / (start[axis + 1] - start[axis]);
+            if (Math.abs(ratio - 1) < 1e-12) {
+                dims[axis] = start[axis] + (end[axis] - start[axis]) * t;
+                dims[axis + 1] = start[axis + 1] + (end[axis + 1] - start[axis + 1]) * t;
+            } else {
+                double fixed = (end[axis] - ratio * start[axis]) / (1 - ratio);
+                double scale = Math.pow(ratio, t);
+                dims[axis] = fixed + (start[axis] - fixed) * scale;
+                dims[axis + 1] = fixed + (start[axis + 1] - fixed) * scale;
+            }
+        }
+        return dims;
+    }
+
+    public void run(String pathName, Executor executor, int encoderThreads) throws Exception {
+        PixelCanvas canvas = new PixelCanvas(width, height, palette);
+        ParallelPngEncoder encoder = new ParallelPngEncoder(encoderThreads);
+        long totalCompute = 0, totalReused = 0;
+
+        for (int frame = 0; frame < frames; ++frame) {
+            double[] dims = frame(frame);
+            long begin = System.nanoTime();
+            render(dims, canvas, executor);
+            long compute = System.nanoTime() - begin;
+
+            String framePath = framePath(pathName, frame);
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(framePath), 1 << 16)) {
+                encoder.write(canvas.getData(), width, height, out, executor);
+            }
+
+            System.out.printf("Frame %04d: %d ms compute, %d ms encode, %.1f%% of pixels reused, %s.%n", frame,
+                compute / 1_000_000, encoder.getTotalMillis(), 100.0 * reused / ((long) width * height), framePath);
+            totalCompute += compute;
+            totalReused += reused;
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+            previousDims = dims;
+        }
+
+        System.out.printf("%d frames: %d ms compute in total, %.1f%% of pixels reused.%n", frames,
+            totalCompute / 1_000_000, 100.0 * totalReused / ((long) width * height * frames));
+    }
+
+    private void render(double[] dims, PixelCanvas canvas, Executor executor) throws Exception {
+        double[] re = new double[width], im = new double[height];
+        MandelKernel.fillAxis(re, 0, width, dims[0], dims[1], width);
+        MandelKernel.fillAxis(im, 0, height, dims[2], dims[3], height);
+        int[] fromX = previousDims == null ? null : match(re, previousDims[0], previousDims[1], width);
+        int[] fromY = previousDims == null ? null : match(im, previousDims[2], previousDims[3], height);
+
+        int tasks = (height + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        CountDownLatch done = new CountDownLatch(tasks);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long[] reusedByTask = new long[tasks];
+        for (int task = 0; task < tasks; ++task) {
+            int index = task;
+            executor.execute(() -> {
+                try {
+                    double[] missingRe = new double[width], missingIm = new double[width];
+                    int[] missing = new int[width], line = new int[width];
+                    int y1 = Math.min(height, (index + 1) * ROWS_PER_TASK);
+                    for (int y = index * ROWS_PER_TASK; y < y1; ++y) {
+                        reusedByTask[index] += renderRow(y, re, im[y], fromX, fromY == null ? -1 : fromY[y], canvas,
+                            missingRe, missingIm, missing, line);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw new Exception("frame failed to render", failure.get());
+        }
+        reused = Arrays.stream(reusedByTask).sum();
+    }
+
+    // The missing and line buffers belong to the calling task and only
+    // need to be width long; their contents do not carry between rows.
+    private int renderRow(int y, double[] re, double im, int[] fromX, int fromY, PixelCanvas canvas,
+                          double[] missingRe, double[] missingIm, int[] missing, int[] line) {
+        int offset = y * width, reusedHere = 0;
+        int count = 0;
+        for (int x = 0; x < width; ++x) {
+            if (fromY >= 0 && fromX[x] >= 0) {
+                current[offset + x] = previous[fromY * width + fromX[x]];
+                ++reusedHere;
+            } else {
+                missing[count] = x;
+                missingRe[count] = re[x];
+                missingIm[count++] = im;
+            }
+        }
+        MandelKernel.generateIterations(engine, missingRe, missingIm, line, count, maxIterations);
+        for (int i = 0; i < count; ++i) {
+            current[offset + missing[i]] = line[i];
+        }
+        canvas.setRow(0, y, current, offset, width);
+        return reusedHere;
+    }
+
+    private static int[] match(double[] axis, double previousStart, double previousEnd, int size) {
+        int[] from = new int[size];
+        double spacing = (previousEnd - previousStart) / size;
+        for (int i = 0; i < size; ++i) {
+            double position = (axis[i] - previousStart) / spacing;
+            long nearest = Math.round(position);
+            from[i] = nearest >= 0 && nearest < size && Math.abs(position - nearest) < COINCIDENCE ? (int) nearest : -1;
+        }
+        return from;
+    }
+}
@@ -1,21 +1,44 @@
 import org.apache.commons.cli.*;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import javax.imageio.ImageIO;
+import java.util.concurrent.Future;
 
 public class MandelWorldDynamic {
-    static int WIDTH = 3840, HEIGHT = 2160, MAX_ITERATIONS = 1024;
+    // The original loop counted from -128 up to 1024, so points ran up to
+    // 1152 iterations, and the count wrapped through a byte into colors;
+    // i & 127 over the palette is the same mapping.
+    static int WIDTH = 3840, HEIGHT = 2160, MAX_ITERATIONS = 1024 + 128;
     static double RE_START_POINT = -0.6386, RE_END_POINT = -0.5986, IM_START_POINT = 0.4456, IM_END_POINT = 0.4686;
-    static byte[][] indexes;
+    static PixelCanvas canvas;
     static int numThreads = 2, granularity = 1, rows, rowWidth;
     static String imageName = "MandelWorldDynamic.png";
+    static MandelKernel.Engine engine = MandelKernel.Engine.PRIMITIVE;
+    static boolean engineGiven = false;
+    static RealAxisMirror mirror = RealAxisMirror.NONE;
+    static int[] antialias;
+    static boolean marianiSilver = false, verify = false, progressive = false;
+    static boolean virtualThreads = false;
+    static int carriers = 0, blockSize = 0;
+    static boolean tiled = false;
+    static int bandLines = 0;
+    static String rawPath, recolorPath;
+    static boolean smooth = false;
+    static String cachePath;
+    static String rectText;
+    static double[] zoomDims;
+    static int frames = 30;
+    static long[] latencies;
+    static ScalabilitySweep sweep;
+    static String tracePath;
+    static int[] serve;
+    static String batchPath;
 
     protected static long getTimeInMillis() {
         return System.currentTimeMillis();
@@ -29,6 +52,27 @@ public class MandelWorldDynamic {
         options.addOption("s", "size", true, "size of image (default: 3840x2160)");
         options.addOption("h", "help", false, "information about arguments (default: false)");
         options.addOption("g", "granularity", true, "granularity (how many tasks per thread) (default: 1)");
+        options.addOption("i", "interior", false, "interior shortcuts: cardioid/bulb test and periodicity checking (default: false)");
+        options.addOption("M", "no-mirror", false, "iterate every row instead of copying the rows mirrored across the real axis (default: false)");
+        options.addOption("m", "mariani", false, "Mariani-Silver border tracing, fills uniform rectangles (default: false)");
+        options.addOption("v", "verify", false, "compare Mariani-Silver result against brute force, or time a progressive render against a single pass (default: false)");
+        options.addOption("w", "virtual", false, "run every task on its own virtual thread (default: false)");
+        options.addOption("C", "carriers", true, "carrier thread parallelism for virtual threads (default: number of threads)");
+        options.addOption("G", "block", true, "task shape: 'row' for one task per row or N for NxN tiles (default: strips)");
+        options.addOption("e", "engine", true, "iteration engine: primitive, complex, vector, double-double, perturbation (default: primitive, or chosen by pixel spacing)");
+        options.addOption("a", "raw", true, "also write raw iteration counts to this file (default: off)");
+        options.addOption("f", "fraction", false, "add smooth fractional escape times to the raw file (default: false)");
+        options.addOption("u", "recolor", true, "color a raw iteration count file instead of rendering (default: off)");
+        options.addOption("x", "cache", true, "reuse and store iteration tiles in this directory (default: off)");
+        options.addOption("A", "antialias", true, "supersample pixels whose count differs from a neighbour by more than T on an NxN jittered grid, N or N:T (default: off, T: 1)");
+        options.addOption("z", "zoom", true, "animate a zoom from the rect to this end rect, one PNG per frame (default: off)");
+        options.addOption("y", "frames", true, "number of frames of the zoom animation (default: 30)");
+        options.addOption("l", "lines", true, "stream the PNG in bands of this many lines instead of holding the whole image (default: off)");
+        options.addOption("S", "sweep", true, "time renders for thread counts x granularities in one JVM and print CSV instead of writing the image, T1,T2,..:G1,G2,..[:repetitions[:warm-up renders]] (default: off, 5 repetitions, 3 warm-up renders)");
+        options.addOption("T", "trace", true, "record every task and write a Chrome trace (about:tracing) JSON to this file, tasks are also JFR events (default: off)");
+        options.addOption("B", "batch", true, "render every job of this file, one \"-r RECT -s WxH -o PATH\" per line with -r and -s defaulting to the options given, overlapping compute with color and encoding (default: off)");
+        options.addOption("H", "serve", true, "serve 256x256 XYZ tiles at http://localhost:PORT/tiles/{z}/{x}/{y}.png and /metrics until killed, PORT[:queue limit[:cached tiles[:handler threads]]] (default: off, queue 64, 4096 tiles, 16 handlers)");
+        options.addOption("P", "progressive", false, "render at 1/8, 1/4, 1/2 and full resolution, writing a preview after each coarse pass (default: false)");
 
         CommandLineParser parser = new DefaultParser();
 
@@ -55,12 +99,13 @@ public class MandelWorldDynamic {
             }
 
             if (cmd.hasOption("r")) {
-                String[] rectPoints = cmd.getOptionValue("r").split(":");
+                rectText = cmd.getOptionValue("r");
+                String[] rectPoints = rectText.split(":");
                 try {
-                    RE_START_POINT = Float.parseFloat(rectPoints[0]);
-                    RE_END_POINT = Float.parseFloat(rectPoints[1]);
-                    IM_START_POINT = Float.parseFloat(rectPoints[2]);
-                    IM_END_POINT = Float.parseFloat(rectPoints[3]);
+                    RE_START_POINT = Double.parseDouble(rectPoints[0]);
+                    RE_END_POINT = Double.parseDouble(rectPoints[1]);
+                    IM_START_POINT = Double.parseDouble(rectPoints[2]);
+                    IM_END_POINT = Double.parseDouble(rectPoints[3]);
                 } catch (NumberFormatException e) {
                     System.out.println("Unexpected exception: " + e.getMessage());
                     System.exit(1);
@@ -94,18 +139,425 @@ public class MandelWorldDynamic {
                     System.exit(1);
                 }
             }
+
+            MandelKernel.setInteriorChecks(cmd.hasOption("i"));
+            RealAxisMirror.setEnabled(!cmd.hasOption("M"));
+            virtualThreads = cmd.hasOption("w");
+
+            if (cmd.hasOption("C")) {
+                try {
+                    carriers = Integer.parseInt(cmd.getOptionValue("C"));
+                } catch (NumberFormatException e) {
+                    System.out.println("Unexpected exception: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+
+            if (cmd.hasOption("G")) {
+                String block = cmd.getOptionValue("G");
+                tiled = true;
+                try {
+                    blockSize = block.equalsIgnoreCase("row") ? 0 : Integer.parseInt(block);
+                } catch (NumberFormatException e) {
+                    System.out.println("Unexpected exception: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+            if (cmd.hasOption("z")) {
+                String[] rectPoints = cmd.getOptionValue("z").split(":");
+                try {
+                    zoomDims = new double[4];
+                    for (int j = 0; j < zoomDims.length; ++j) {
+                        zoomDims[j] = Double.parseDouble(rectPoints[j]);
+                    }
+                    frames = Integer.parseInt(cmd.getOptionValue("y", "30"));
+                } catch (NumberFormatException e) {
+                    System.out.println("Unexpected exception: " + e.getMessage());
+                    System.exit(1);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    System.out.println("Array index out of bounds at: " + e.getMessage() +
+                        ". Please provide 4 values to the '-z' option.");
+                    System.exit(1);
+                }
+            }
+
+            if (cmd.hasOption("l")) {
+                try {
+                    bandLines = Integer.parseInt(cmd.getOptionValue("l"));
+                } catch (NumberFormatException e) {
+                    System.out.println("Unexpected exception: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+
+            rawPath = cmd.getOptionValue("a");
+            smooth = cmd.hasOption("f");
+            recolorPath = cmd.getOptionValue("u");
+            cachePath = cmd.getOptionValue("x");
+
+            if (cmd.hasOption("A")) {
+                try {
+                    antialias = EdgeSupersampler.parse(cmd.getOptionValue("A"));
+                } catch (NumberFormatException e) {
+                    System.out.println("Unexpected exception: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+
+            marianiSilver = cmd.hasOption("m");
+            verify = cmd.hasOption("v");
+            progressive = cmd.hasOption("P");
+            tracePath = cmd.getOptionValue("T");
+            batchPath = cmd.getOptionValue("B");
+            if (tracePath != null) {
+                TaskTrace.enable();
+            }
+
+            if (cmd.hasOption("S")) {
+                try {
+                    sweep = ScalabilitySweep.parse(cmd.getOptionValue("S"));
+                } catch (NumberFormatException e) {
+                    System.out.println("Unexpected exception: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+
+            if (cmd.hasOption("H")) {
+                try {
+                    serve = TileServer.parse(cmd.getOptionValue("H"));
+                } catch (NumberFormatException e) {
+                    System.out.println("Unexpected exception: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+
+            if (cmd.hasOption("e")) {
+                try {
+                    engine = MandelKernel.Engine.parse(cmd.getOptionValue("e"));
+                    engineGiven = true;
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unexpected exception: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
         } catch (ParseException exp) {
             System.out.println("Unexpected exception:" + exp.getMessage());
             System.exit(1);
         }
     }
 
+    static ExecutorService createPool() {
+        if (virtualThreads) {
+            int parallelism = carriers > 0 ? carriers : numThreads;
+            System.setProperty("jdk.virtualThreadScheduler.parallelism", Integer.toString(parallelism));
+            System.setProperty("jdk.virtualThreadScheduler.maxPoolSize", Integer.toString(Math.max(256, parallelism)));
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                System.out.println("Virtual threads are unavailable on this JVM, using platform threads instead.");
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, numThreads - 1));
+    }
+
+    static WorkerDynamic[] createTasks() {
+        if (!tiled) {
+            WorkerDynamic[] tasks = new WorkerDynamic[rows];
+            for (int i = 0; i < rows; i++) {
+                tasks[i] = new WorkerDynamic(i);
+            }
+            return tasks;
+        }
+
+        int tileWidth = blockSize > 0 ? blockSize : WIDTH;
+        int tileHeight = blockSize > 0 ? blockSize : 1;
+        int tilesX = (WIDTH + tileWidth - 1) / tileWidth, tilesY = (HEIGHT + tileHeight - 1) / tileHeight;
+        WorkerDynamic[] tasks = new WorkerDynamic[tilesX * tilesY];
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int index = ty * tilesX + tx;
+                tasks[index] = new WorkerDynamic(index, tx * tileWidth, ty * tileHeight,
+                    Math.min(WIDTH, (tx + 1) * tileWidth), Math.min(HEIGHT, (ty + 1) * tileHeight));
+            }
+        }
+        return tasks;
+    }
+
+    static void printLatencies(long elapsedMillis) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double megapixels = (double) WIDTH * HEIGHT / 1e6;
+        System.out.printf("%d tasks, throughput %.2f Mpx/s, task latency p50 %.2f ms, p99 %.2f ms, max %.2f ms.%n",
+            sorted.length, megapixels / Math.max(1, elapsedMillis) * 1000, percentile(sorted, 0.50) / 1e6,
+            percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    static double[] dims() {
+        return new double[]{RE_START_POINT, RE_END_POINT, IM_START_POINT, IM_END_POINT};
+    }
+
+    static IterationFile createCounts() {
+        try {
+            return rawPath == null ? null : IterationFile.create(rawPath, WIDTH, HEIGHT, MAX_ITERATIONS, engine, dims(), smooth);
+        } catch (IOException e) {
+            System.out.println("Unexpected exception: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    static void closeCounts(IterationFile counts) {
+        if (counts != null) {
+            try {
+                counts.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    static void recolor(IterationFile source, int[] palette) {
+        long startTime = getTimeInMillis();
+        canvas = new PixelCanvas(WIDTH, HEIGHT, palette);
+        ParallelPngEncoder encoder = new ParallelPngEncoder(numThreads);
+        try {
+            source.recolor(canvas, palette, numThreads);
+            source.close();
+            encoder.write(canvas, imageName);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        long endTime = getTimeInMillis();
+        System.out.println("Recolored " + recolorPath + " in " + (endTime - startTime) + " ms without iterating.");
+        System.out.println(encoder.report());
+    }
+
+    static void cached(IterationFile counts) {
+        TileCache cache = new TileCache(cachePath);
+        TileRender render = new TileRender(cache, engine, MAX_ITERATIONS, dims(), WIDTH, HEIGHT, canvas);
+        long startTime = getTimeInMillis();
+        ExecutorService pool = createPool();
+        try {
+            render.render(pool);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        pool.shutdown();
+        long endTime = getTimeInMillis();
+        closeCounts(counts);
+
+        ParallelPngEncoder encoder = new ParallelPngEncoder(numThreads);
+        try {
+            encoder.write(canvas, imageName);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        System.out.println("Total execution time is: " + (endTime - startTime) + " ms.");
+        System.out.println(cache.report());
+        System.out.println(encoder.report());
+    }
+
+    static EdgeSupersampler refine() {
+        EdgeSupersampler sampler = new EdgeSupersampler(canvas, engine, MAX_ITERATIONS, dims(), WIDTH, HEIGHT,
+            antialias[0], antialias[1], mirror.getFrom(), mirror.getTo());
+        ExecutorService pool = createPool();
+        try {
+            sampler.refine(pool);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        pool.shutdown();
+        return sampler;
+    }
+
+    static void zoom(int[] palette) {
+        ExecutorService pool = createPool();
+        ZoomSequence sequence = new ZoomSequence(engine, MAX_ITERATIONS, dims(), zoomDims, frames, WIDTH, HEIGHT, palette);
+        try {
+            sequence.run(imageName, pool, numThreads);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        pool.shutdown();
+    }
+
+    // Renders run on the usual pool; requests wait for their tiles on
+    // handler threads of their own.
+    static void serve(int[] palette) {
+        TileServer server = new TileServer(engine, MAX_ITERATIONS, palette, createPool(), serve[1], serve[2]);
+        try {
+            server.start(serve[0], serve[3]);
+        } catch (IOException e) {
+            System.out.println("Unexpected exception: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("Serving tiles at http://localhost:" + server.getPort() + "/tiles/{z}/{x}/{y}.png, metrics at /metrics.");
+    }
+
+    static void batch(int[] palette) {
+        ExecutorService pool = createPool();
+        try {
+            List<BatchRender.Job> jobs = BatchRender.read(batchPath, dims(), WIDTH, HEIGHT);
+            new BatchRender(engine, MAX_ITERATIONS, palette, numThreads).run(jobs, pool);
+        } catch (Exception e) {
+            System.out.println("Unexpected exception: " + e.getMessage());
+            System.exit(1);
+        }
+        pool.shutdown();
+    }
+
+    static void stream(int[] palette) {
+        BandStream.resetPeakHeap();
+        long startTime = getTimeInMillis();
+
+        ExecutorService pool = createPool();
+        BandStream stream = new BandStream(engine, MAX_ITERATIONS, dims(), WIDTH, HEIGHT, bandLines, 2 * numThreads, palette);
+        IterationFile counts = createCounts();
+        stream.setCounts(counts);
+        try {
+            stream.write(imageName, pool);
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        pool.shutdown();
+        closeCounts(counts);
+
+        long endTime = getTimeInMillis();
+        System.out.println("Total execution time is: " + (endTime - startTime) + " ms.");
+        System.out.println(stream.report());
+        if (MandelKernel.isInteriorChecks()) {
+            System.out.println(MandelKernel.shortCircuitedReport((long) WIDTH * HEIGHT));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            System.out.println(PerturbationReference.report());
+        }
+    }
+
+    // The single pass for -v runs after the progressive one on the same
+    // pool, into a canvas of its own.
+    static void progressive(IterationFile counts, int[] palette) {
+        ProgressiveRender render = new ProgressiveRender(canvas, engine, MAX_ITERATIONS, dims(), WIDTH, HEIGHT,
+            imageName, ProgressiveRender.PASSES);
+        ProgressiveRender single = verify ? new ProgressiveRender(new PixelCanvas(WIDTH, HEIGHT, palette), engine,
+            MAX_ITERATIONS, dims(), WIDTH, HEIGHT, null, ProgressiveRender.SINGLE) : null;
+        ExecutorService pool = createPool();
+        ParallelPngEncoder encoder = new ParallelPngEncoder(numThreads);
+        try {
+            render.render(pool);
+            encoder.write(canvas, imageName);
+            if (single != null) {
+                single.render(pool);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        pool.shutdown();
+        closeCounts(counts);
+
+        System.out.println("Total execution time is: " + render.getTotalMillis() + " ms.");
+        System.out.println(render.report());
+        System.out.println(encoder.report());
+        if (single != null) {
+            System.out.println(render.compare(single));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            System.out.println(PerturbationReference.report());
+        }
+    }
+
+    // Every render gets a pool and strips for its thread count and
+    // granularity as -t and -g would; pool start-up and shutdown are not
+    // timed.
+    static void sweep() {
+        mirror = RealAxisMirror.detect(engine, dims(), HEIGHT);
+        try {
+            sweep.run((count, gran) -> {
+                numThreads = count;
+                granularity = gran;
+                rows = numThreads * granularity;
+                rowWidth = (int) Math.ceil((float) HEIGHT / rows);
+                WorkerDynamic[] tasks = createTasks();
+                latencies = tiled || virtualThreads ? new long[tasks.length] : null;
+                ExecutorService pool = createPool();
+                List<Future<?>> submitted = new ArrayList<>();
+                long start = System.nanoTime();
+                for (WorkerDynamic task : tasks) {
+                    task.markSubmitted();
+                    submitted.add(pool.submit(task));
+                }
+                for (Future<?> task : submitted) {
+                    task.get();
+                }
+                mirror.copy(canvas, pool);
+                long nanos = System.nanoTime() - start;
+                pool.shutdown();
+                return nanos;
+            }, System.out);
+        } catch (Exception e) {
+            System.out.println("Unexpected exception: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
     public static void main(String[] args) {
         insertOptions(args);
-        indexes = new byte[WIDTH][HEIGHT];
+
+        IterationFile source = null;
+        if (recolorPath != null) {
+            try {
+                source = IterationFile.open(recolorPath);
+            } catch (IOException e) {
+                System.out.println("Unexpected exception: " + e.getMessage());
+                System.exit(1);
+            }
+            WIDTH = source.getWidth();
+            HEIGHT = source.getHeight();
+            MAX_ITERATIONS = source.getMaxIterations();
+            double[] dims = source.getDims();
+            RE_START_POINT = dims[0];
+            RE_END_POINT = dims[1];
+            IM_START_POINT = dims[2];
+            IM_END_POINT = dims[3];
+        }
         rows = numThreads * granularity;
         rowWidth = (int) Math.ceil((float) HEIGHT / rows);
 
+        if (zoomDims != null && engine.isOffset()) {
+            System.out.println("Zoom sequences iterate absolute coordinates, using the primitive engine.");
+            engine = MandelKernel.Engine.PRIMITIVE;
+        }
+        if (serve != null && engine.isOffset()) {
+            System.out.println("Tiles iterate absolute coordinates, using the primitive engine.");
+            engine = MandelKernel.Engine.PRIMITIVE;
+        }
+        if (batchPath != null && engine.isOffset()) {
+            System.out.println("Batch jobs iterate absolute coordinates, using the primitive engine.");
+            engine = MandelKernel.Engine.PRIMITIVE;
+        }
+        if (source == null && zoomDims == null && serve == null && batchPath == null) {
+            if (!engineGiven) {
+                engine = MandelKernel.Engine.forView(rectText, dims(), WIDTH, HEIGHT);
+            }
+            if (engine.isOffset()) {
+                double[] offsets = engine == MandelKernel.Engine.DOUBLEDOUBLE ? DoubleDoubleKernel.install(rectText, dims())
+                    : PerturbationReference.install(rectText, dims(), WIDTH, HEIGHT, MAX_ITERATIONS);
+                RE_START_POINT = offsets[0];
+                RE_END_POINT = offsets[1];
+                IM_START_POINT = offsets[2];
+                IM_END_POINT = offsets[3];
+            }
+        }
+
         int[] colors = new int[MAX_ITERATIONS];
         for (int i = 0; i < MAX_ITERATIONS; i++) {
             colors[i] = Color.HSBtoRGB((100f + i * 2f) / 256f, 0.87f, i / (i + 2.5f));
@@ -113,47 +565,161 @@ public class MandelWorldDynamic {
 
         colors[127] = Color.BLACK.getRGB();
 
-        BufferedImage bi = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        int[] palette = new int[MAX_ITERATIONS + 1];
+        for (int i = 0; i <= MAX_ITERATIONS; i++) {
+            palette[i] = colors[i & 127];
+        }
 
-        Graphics2D g2d = bi.createGraphics();
-        g2d.fillRect(0, 0, WIDTH, HEIGHT);
+        if (source != null) {
+            recolor(source, palette);
+            return;
+        }
 
-        long startTime = getTimeInMillis();
+        if (serve != null) {
+            serve(palette);
+            return;
+        }
 
-        ExecutorService pool = Executors.newFixedThreadPool(numThreads - 1);
+        if (batchPath != null) {
+            batch(palette);
+            return;
+        }
 
-        WorkerDynamic[] tasks = new WorkerDynamic[rows];
-        for (int i = 0; i < rows; i++) {
-            tasks[i] = new WorkerDynamic(i);
+        if (zoomDims != null) {
+            zoom(palette);
+            return;
         }
 
-        for (int i = 0; i < rows; i++) {
-            pool.execute(tasks[i]);
+        if (bandLines > 0) {
+            stream(palette);
+            return;
+        }
+
+        canvas = new PixelCanvas(WIDTH, HEIGHT, palette);
+        if (sweep != null) {
+            sweep();
+            return;
+        }
+
+        IterationFile counts = createCounts();
+        canvas.setCounts(counts);
+
+        if (cachePath != null) {
+            cached(counts);
+            return;
+        }
+
+        if (progressive) {
+            progressive(counts, palette);
+            return;
+        }
+
+        long startTime = getTimeInMillis();
+
+        ExecutorService pool = createPool();
+        mirror = RealAxisMirror.detect(engine, dims(), HEIGHT);
+        if (antialias != null || marianiSilver) {
+            canvas.keepIterations();
+        }
+
+        MarianiSilver mariani = null;
+        List<Future<?>> submitted = new ArrayList<>();
+        if (marianiSilver) {
+            mariani = new MarianiSilver(canvas, engine, MAX_ITERATIONS, dims(), WIDTH, HEIGHT, pool);
+            mariani.setBand(mirror.getFrom(), mirror.getTo());
+
+            for (int i = 0; i < rows; i++) {
+                mariani.submit(0, i * rowWidth, WIDTH, Math.min(i * rowWidth + rowWidth, HEIGHT));
+            }
+
+            try {
+                mariani.await();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        } else {
+            WorkerDynamic[] tasks = createTasks();
+            if (tiled || virtualThreads) {
+                latencies = new long[tasks.length];
+            }
+
+            for (WorkerDynamic task : tasks) {
+                task.markSubmitted();
+                submitted.add(pool.submit(task));
+            }
         }
 
-        pool.shutdown();
         try {
-            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
+            for (Future<?> task : submitted) {
+                task.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
             e.printStackTrace();
         }
+        EdgeSupersampler sampler = null;
+        long refineStart = getTimeInMillis();
+        if (antialias != null) {
+            sampler = refine();
+        }
+        long refineEnd = getTimeInMillis();
+        try {
+            mirror.copy(canvas, pool);
+        } catch (InterruptedException e) {
+            System.out.println("Unexpected exception: " + e.getMessage());
+            System.exit(1);
+        }
+        pool.shutdown();
 
         long endTime = getTimeInMillis();
+        closeCounts(counts);
 
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                if (indexes[x][y] < 0) {
-                    indexes[x][y] += 128;
-                }
-                bi.setRGB(x, y, colors[indexes[x][y]]);
-            }
-        }
+        long mismatched = mariani != null && verify ? mariani.verify() : 0;
 
+        long encodeStart = getTimeInMillis();
+        ParallelPngEncoder encoder = new ParallelPngEncoder(numThreads);
         try {
-            ImageIO.write(bi, "png", new File(imageName));
+            encoder.write(canvas, imageName);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        long writtenTime = getTimeInMillis();
+
+        if (tracePath != null) {
+            try {
+                TaskTrace.writeChromeTrace(tracePath);
+            } catch (IOException e) {
+                System.out.println("Unexpected exception: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
         System.out.println("Total execution time is: " + (endTime - startTime) + " ms.");
+        System.out.println(encoder.report());
+        System.out.println("Stages: compute and color " + (endTime - startTime) + " ms, encode and write "
+            + (writtenTime - encodeStart) + " ms, end to end " + (writtenTime - startTime) + " ms.");
+        if (MandelKernel.isInteriorChecks()) {
+            System.out.println(MandelKernel.shortCircuitedReport((long) WIDTH * HEIGHT));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            System.out.println(PerturbationReference.report());
+        }
+        if (mirror.getMirroredRows() > 0) {
+            System.out.println(mirror.report());
+        }
+        if (sampler != null) {
+            System.out.println(sampler.report(refineEnd - refineStart));
+        }
+        if (latencies != null) {
+            printLatencies(endTime - startTime);
+        }
+        if (mariani != null) {
+            System.out.println(mariani.report((long) WIDTH * HEIGHT));
+            if (verify) {
+                System.out.println("Verification against brute force: " + mismatched + " mismatched pixels.");
+            }
+        }
+        if (tracePath != null) {
+            System.out.println(TaskTrace.report());
+        }
     }
 }
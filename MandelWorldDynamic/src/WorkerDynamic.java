@@ -1,45 +1,60 @@
-import org.apache.commons.math3.complex.Complex;
+import java.util.Arrays;
 
 public class WorkerDynamic implements java.lang.Runnable {
     private final int taskLocation;
+    private final int x0, y0, x1, y1;
+    private long submitted;
 
     public WorkerDynamic(int taskLocation) {
-        this.taskLocation = taskLocation;
+        this(taskLocation, 0, taskLocation * MandelWorldDynamic.rowWidth, MandelWorldDynamic.WIDTH,
+            Math.min(taskLocation * MandelWorldDynamic.rowWidth + MandelWorldDynamic.rowWidth, MandelWorldDynamic.HEIGHT));
     }
 
-    private Complex calculateNext(Complex z, Complex c) {
-        return z.multiply(z).add(c);
+    public WorkerDynamic(int taskLocation, int x0, int y0, int x1, int y1) {
+        this.taskLocation = taskLocation;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
     }
 
-    private short generateIteration(Complex c) {
-        Complex z = new Complex(0, 0);
-
-        short currentIteration = -128;
-
-        while (z.abs() <= 2 && currentIteration < MandelWorldDynamic.MAX_ITERATIONS) {
-            z = calculateNext(z, c);
-            currentIteration++;
-        }
-
-        return currentIteration;
+    public void markSubmitted() {
+        submitted = System.nanoTime();
     }
 
     @Override
     public void run() {
-        int startFrom = taskLocation * MandelWorldDynamic.rowWidth;
-        int endTo = taskLocation * MandelWorldDynamic.rowWidth + MandelWorldDynamic.rowWidth;
-        for (int y = startFrom; y < endTo && y < MandelWorldDynamic.HEIGHT; y++) {
-            for (int x = 0; x < MandelWorldDynamic.WIDTH; x++) {
-
-                double pixel_x = MandelWorldDynamic.RE_START_POINT + ((double) x / MandelWorldDynamic.WIDTH) *
-                    (MandelWorldDynamic.RE_END_POINT - MandelWorldDynamic.RE_START_POINT);
+        int width = MandelWorldDynamic.WIDTH;
+        int count = x1 - x0;
+        double[] re = new double[count], im = new double[count];
+        int[] line = new int[count];
+        TaskTrace.Span span = TaskTrace.start();
+        long pixels = 0, iterations = 0;
+        MandelKernel.fillAxis(re, x0, count, MandelWorldDynamic.RE_START_POINT, MandelWorldDynamic.RE_END_POINT, width);
+
+        for (int y = y0; y < y1; y++) {
+            if (MandelWorldDynamic.mirror.isMirrored(y)) {
+                continue;
+            }
+            double pixel_y = MandelWorldDynamic.IM_START_POINT + ((double) y / (MandelWorldDynamic.HEIGHT)) *
+                (MandelWorldDynamic.IM_END_POINT - MandelWorldDynamic.IM_START_POINT);
+            Arrays.fill(im, pixel_y);
 
-                double pixel_y = MandelWorldDynamic.IM_START_POINT + ((double) y / (MandelWorldDynamic.HEIGHT)) *
-                    (MandelWorldDynamic.IM_END_POINT - MandelWorldDynamic.IM_START_POINT);
+            MandelKernel.generateIterations(MandelWorldDynamic.engine, re, im, line, count,
+                MandelWorldDynamic.MAX_ITERATIONS);
 
-                Complex c = new Complex(pixel_x, pixel_y);
-                MandelWorldDynamic.indexes[x][y] = (byte) generateIteration(c);
+            MandelWorldDynamic.canvas.setRow(x0, y, line, count);
+            if (span != null) {
+                pixels += count;
+                iterations += TaskTrace.sum(line, count);
             }
         }
+        if (span != null) {
+            span.finish("task " + taskLocation + " " + x0 + "," + y0 + "-" + x1 + "," + y1, pixels, iterations);
+        }
+
+        if (MandelWorldDynamic.latencies != null) {
+            MandelWorldDynamic.latencies[taskLocation] = System.nanoTime() - submitted;
+        }
     }
 }
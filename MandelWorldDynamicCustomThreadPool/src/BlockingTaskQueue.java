@@ -0,0 +1,25 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class BlockingTaskQueue implements TaskQueue {
+    private final BlockingQueue<Runnable> queue;
+
+    public BlockingTaskQueue(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        return queue.offer(task);
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        queue.put(task);
+    }
+
+    @Override
+    public Runnable take(int worker) throws InterruptedException {
+        return queue.take();
+    }
+}
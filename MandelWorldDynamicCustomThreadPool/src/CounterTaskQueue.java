@@ -0,0 +1,63 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+public class CounterTaskQueue extends RingTaskQueue {
+
+    // Handed to the workers as is; each one claims its index and calls the
+    // body itself, so a range costs no task object per index. It is never
+    // run as a plain task.
+    static final class Range implements Runnable {
+        final int count;
+        final IntConsumer body;
+        final AtomicInteger next = new AtomicInteger();
+
+        Range(int count, IntConsumer body) {
+            this.count = count;
+            this.body = body;
+        }
+
+        boolean hasNext() {
+            return next.get() < count;
+        }
+
+        // The next unclaimed index, or -1 once the range is used up.
+        int claim() {
+            int index = next.getAndIncrement();
+            return index < count ? index : -1;
+        }
+
+        @Override
+        public void run() {
+            throw new UnsupportedOperationException("range indices are claimed by the workers");
+        }
+    }
+
+    private final AtomicReference<Range> range = new AtomicReference<>(new Range(0, index -> { }));
+
+    public CounterTaskQueue(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public boolean offerRange(int count, IntConsumer body) {
+        // Only one of several producers that find the range used up may
+        // replace it; the others fall back to queueing their tasks.
+        Range current = range.get();
+        if (current.hasNext() || !range.compareAndSet(current, new Range(count, body))) {
+            return false;
+        }
+        idle.wakeAll();
+        return true;
+    }
+
+    @Override
+    public Runnable take(int worker) throws InterruptedException {
+        return idle.await(this::claim);
+    }
+
+    private Runnable claim() {
+        Range current = range.get();
+        return current.hasNext() ? current : poll();
+    }
+}
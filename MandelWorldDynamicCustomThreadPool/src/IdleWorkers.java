@@ -0,0 +1,52 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+public class IdleWorkers {
+    private static final int SPINS = 200;
+    private static final long PARK_NANOS = 1_000_000;
+
+    private final Queue<Thread> parked = new ConcurrentLinkedQueue<>();
+
+    public Runnable await(Supplier<Runnable> poll) throws InterruptedException {
+        for (int spin = 0; ; ++spin) {
+            Runnable task = poll.get();
+            if (task != null) {
+                return task;
+            }
+            if (spin < SPINS) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            Thread current = Thread.currentThread();
+            parked.add(current);
+            task = poll.get();
+            if (task == null) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            parked.remove(current);
+            if (task != null) {
+                return task;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    public void wakeOne() {
+        Thread thread = parked.poll();
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public void wakeAll() {
+        Thread thread;
+        while ((thread = parked.poll()) != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
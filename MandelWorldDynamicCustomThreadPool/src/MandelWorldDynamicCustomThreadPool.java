@@ -1,11 +1,8 @@
 import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.cli.*;
 
 public class MandelWorldDynamicCustomThreadPool {
@@ -13,13 +10,29 @@ public class MandelWorldDynamicCustomThreadPool {
     protected static int width = 3840, height = 2160;
     protected static double[] dims = {-0.6386,-0.5986,0.4456,0.4686};
     protected static int threads = 2, tasks = 1, gran = 1, maxIterations = 1024;
-    protected static int[][] pixels = new int[width][height];
+    protected static PixelCanvas canvas;
     protected static String pathName = "MandelWorldDynamicCustomThreadPool.png";
     protected static boolean quiet = false, byCols = false;
-    protected static int numberOfFinishedTasks = 0;
-    protected static synchronized void increaseFinishedTasks() {
-        ++numberOfFinishedTasks;
-    }
+    protected static boolean marianiSilver = false, verify = false, progressive = false;
+    protected static MandelKernel.Engine engine = MandelKernel.Engine.PRIMITIVE;
+    protected static boolean engineGiven = false;
+    protected static RealAxisMirror mirror = RealAxisMirror.NONE;
+    protected static int[] antialias;
+    protected static EdgeSupersampler sampler;
+    protected static long refineMillis;
+    protected static int renders = 1;
+    protected static int bandLines = 0;
+    protected static String rawPath, recolorPath;
+    protected static boolean smooth = false;
+    protected static String cachePath;
+    protected static String rectText;
+    protected static double[] zoomDims;
+    protected static int frames = 30;
+    protected static TaskQueue.Type queueType = TaskQueue.Type.BLOCKING;
+    protected static int dispatchTasks = 0;
+    protected static ScalabilitySweep sweep;
+    protected static String tracePath;
+    private static final LongAdder dispatchSink = new LongAdder();
 
     protected static long getTimeInMillis() {
         return System.currentTimeMillis();
@@ -35,6 +48,25 @@ public class MandelWorldDynamicCustomThreadPool {
         opt.addOption("h", "help", false, "information about arguments (default: false)");
         opt.addOption("g", "gran", true, "granularity (default: 1)");
         opt.addOption("c", "cols", false, "decomposition by cols (default: false)");
+        opt.addOption("i", "interior", false, "interior shortcuts: cardioid/bulb test and periodicity checking (default: false)");
+        opt.addOption("M", "no-mirror", false, "iterate every row instead of copying the rows mirrored across the real axis (default: false)");
+        opt.addOption("m", "mariani", false, "Mariani-Silver border tracing, fills uniform rectangles (default: false)");
+        opt.addOption("v", "verify", false, "compare Mariani-Silver result against brute force, or time a progressive render against a single pass (default: false)");
+        opt.addOption("n", "renders", true, "number of renders through the same pool (default: 1)");
+        opt.addOption("k", "queue", true, "task queue of the pool: blocking, ring, stealing, counter (default: blocking)");
+        opt.addOption("d", "dispatch", true, "microbenchmark: run this many empty tasks through the pool and exit");
+        opt.addOption("e", "engine", true, "iteration engine: primitive, complex, vector, double-double, perturbation (default: primitive, or chosen by pixel spacing)");
+        opt.addOption("a", "raw", true, "also write raw iteration counts to this file (default: off)");
+        opt.addOption("f", "fraction", false, "add smooth fractional escape times to the raw file (default: false)");
+        opt.addOption("u", "recolor", true, "color a raw iteration count file instead of rendering (default: off)");
+        opt.addOption("x", "cache", true, "reuse and store iteration tiles in this directory (default: off)");
+        opt.addOption("A", "antialias", true, "supersample pixels whose count differs from a neighbour by more than T on an NxN jittered grid, N or N:T (default: off, T: 1)");
+        opt.addOption("z", "zoom", true, "animate a zoom from the rect to this end rect, one PNG per frame (default: off)");
+        opt.addOption("y", "frames", true, "number of frames of the zoom animation (default: 30)");
+        opt.addOption("S", "sweep", true, "time renders for thread counts x granularities in one JVM and print CSV instead of writing the image, T1,T2,..:G1,G2,..[:repetitions[:warm-up renders]] (default: off, 5 repetitions, 3 warm-up renders)");
+        opt.addOption("T", "trace", true, "record every task and write a Chrome trace (about:tracing) JSON to this file, tasks are also JFR events (default: off)");
+        opt.addOption("P", "progressive", false, "render at 1/8, 1/4, 1/2 and full resolution, writing a preview after each coarse pass (default: false)");
+        opt.addOption("l", "lines", true, "stream the PNG in bands of this many lines instead of holding the whole image (default: off)");
 
         CommandLineParser parser = new DefaultParser();
 
@@ -45,7 +77,6 @@ public class MandelWorldDynamicCustomThreadPool {
                 try {
                     width = Integer.parseInt(size[0]);
                     height = Integer.parseInt(size[1]);
-                    pixels = new int[width][height];
                 } catch (NumberFormatException e) {
                     System.out.println(e.getMessage());
                     System.exit(1);
@@ -56,10 +87,11 @@ public class MandelWorldDynamicCustomThreadPool {
             }
 
             if (cmd.hasOption("r")) {
-                String[] dim = cmd.getOptionValue("r").split(":");
+                rectText = cmd.getOptionValue("r");
+                String[] dim = rectText.split(":");
                 try {
                     for (int j = 0; j < dim.length; ++j) {
-                        dims[j] = Float.parseFloat(dim[j]);
+                        dims[j] = Double.parseDouble(dim[j]);
                     }
                 } catch (NumberFormatException e) {
                     System.out.println(e.getMessage());
@@ -92,12 +124,106 @@ public class MandelWorldDynamicCustomThreadPool {
                 }
             }
 
+            if (cmd.hasOption("e")) {
+                try {
+                    engine = MandelKernel.Engine.parse(cmd.getOptionValue("e"));
+                    engineGiven = true;
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(9);
+                }
+            }
+
+            if (cmd.hasOption("n")) {
+                try {
+                    renders = Integer.parseInt(cmd.getOptionValue("n"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(10);
+                }
+            }
+
+            if (cmd.hasOption("k")) {
+                try {
+                    queueType = TaskQueue.Type.parse(cmd.getOptionValue("k"));
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(11);
+                }
+            }
+
+            if (cmd.hasOption("d")) {
+                try {
+                    dispatchTasks = Integer.parseInt(cmd.getOptionValue("d"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(12);
+                }
+            }
+
+            if (cmd.hasOption("z")) {
+                String[] dim = cmd.getOptionValue("z").split(":");
+                try {
+                    zoomDims = new double[4];
+                    for (int j = 0; j < zoomDims.length; ++j) {
+                        zoomDims[j] = Double.parseDouble(dim[j]);
+                    }
+                    frames = Integer.parseInt(cmd.getOptionValue("y", "30"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(14);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(15);
+                }
+            }
+
+            if (cmd.hasOption("l")) {
+                try {
+                    bandLines = Integer.parseInt(cmd.getOptionValue("l"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(13);
+                }
+            }
+
             if (cmd.hasOption("o")) {
                 pathName = cmd.getOptionValue("o");
             }
 
             quiet = cmd.hasOption("q");
+            rawPath = cmd.getOptionValue("a");
+            smooth = cmd.hasOption("f");
+            recolorPath = cmd.getOptionValue("u");
+            cachePath = cmd.getOptionValue("x");
+
+            if (cmd.hasOption("A")) {
+                try {
+                    antialias = EdgeSupersampler.parse(cmd.getOptionValue("A"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(17);
+                }
+            }
             byCols = cmd.hasOption("c");
+            MandelKernel.setInteriorChecks(cmd.hasOption("i"));
+            RealAxisMirror.setEnabled(!cmd.hasOption("M"));
+            marianiSilver = cmd.hasOption("m");
+            verify = cmd.hasOption("v");
+            progressive = cmd.hasOption("P");
+            tracePath = cmd.getOptionValue("T");
+            if (tracePath != null) {
+                TaskTrace.enable();
+            }
+
+            if (cmd.hasOption("S")) {
+                try {
+                    sweep = ScalabilitySweep.parse(cmd.getOptionValue("S"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(18);
+                }
+            }
 
             if (cmd.hasOption("h")) {
                 HelpFormatter formatter = new HelpFormatter();
@@ -110,45 +236,253 @@ public class MandelWorldDynamicCustomThreadPool {
         }
     }
 
-    static private Complex calculateNext(Complex z, Complex c) {
-        return z.multiply(z).add(c);
+    static private void generateLine(double[] re, double[] im, int[] out, int count) {
+        MandelKernel.generateIterations(engine, re, im, out, count, maxIterations);
     }
 
-    static private int generateIteration(Complex c) {
-        Complex z = new Complex(0, 0);
+    static private void byRows(int current, int part) {
+        double[] re = new double[width], im = new double[width];
+        int[] line = new int[width];
+        MandelKernel.fillAxis(re, 0, width, dims[0], dims[1], width);
+        int bottom = Math.min(height, mirror.getTo());
+        TaskTrace.Span span = TaskTrace.start();
+        long pixels = 0, iterations = 0;
+        for (int y = current; y < current + part && y < bottom; ++y) {
+            Arrays.fill(im, dims[2] + ((double) y / height) * (dims[3] - dims[2]));
+            generateLine(re, im, line, width);
+            canvas.setRow(0, y, line, width);
+            if (span != null) {
+                pixels += width;
+                iterations += TaskTrace.sum(line, width);
+            }
+        }
+        if (span != null) {
+            span.finish("rows " + current + "-" + Math.min(current + part, bottom), pixels, iterations);
+        }
+    }
 
-        int currentIteration = 0;
+    static private void byCols(int current, int part) {
+        int top = mirror.getFrom(), count = Math.min(height, mirror.getTo()) - top;
+        double[] re = new double[count], im = new double[count];
+        int[] line = new int[count];
+        MandelKernel.fillAxis(im, top, count, dims[2], dims[3], height);
+        TaskTrace.Span span = TaskTrace.start();
+        long pixels = 0, iterations = 0;
+        for (int x = current; x < current + part && x < width; ++x) {
+            Arrays.fill(re, dims[0] + ((double) x / width) * (dims[1] - dims[0]));
+            generateLine(re, im, line, count);
+            canvas.setColumn(x, top, line, count);
+            if (span != null) {
+                pixels += count;
+                iterations += TaskTrace.sum(line, count);
+            }
+        }
+        if (span != null) {
+            span.finish("cols " + current + "-" + Math.min(current + part, width), pixels, iterations);
+        }
+    }
 
-        while (z.abs() <= 2 && currentIteration < maxIterations) {
-            z = calculateNext(z, c);
-            ++currentIteration;
+    // Rows are divided within the band the mirror leaves to iterate.
+    static MarianiSilver render(ThreadPoolCustom threadPoolCustom) throws Exception {
+        int div = tasks;
+        int top = mirror.getFrom(), bottom = Math.min(height, mirror.getTo()), band = bottom - top;
+        int partRows = band / div + (band % div == 0 ? 0 : 1);
+        int partCols = width / div + (width % div == 0 ? 0 : 1);
+        final int part = byCols ? partCols : partRows;
+        MarianiSilver mariani = null;
+        if (marianiSilver) {
+            mariani = new MarianiSilver(canvas, engine, maxIterations, dims, width, height, task -> {
+                if (!threadPoolCustom.tryExecute(task)) {
+                    task.run();
+                }
+            });
+            mariani.setBand(top, bottom);
+
+            for (int k = 0; k < div; ++k) {
+                final int current = k * part;
+                if (byCols) {
+                    mariani.submit(current, 0, Math.min(current + part, width), height);
+                } else {
+                    mariani.submit(0, top + current, width, Math.min(top + current + part, bottom));
+                }
+            }
+            mariani.await();
+        } else {
+            threadPoolCustom.executeRange(div, k -> {
+                if (byCols) {
+                    byCols(k * part, part);
+                } else {
+                    byRows(top + k * part, part);
+                }
+            });
+        }
+
+        threadPoolCustom.waitUntilAllTasksFinished();
+
+        if (antialias != null) {
+            long refineStart = getTimeInMillis();
+            sampler = new EdgeSupersampler(canvas, engine, maxIterations, dims, width, height,
+                antialias[0], antialias[1], top, bottom);
+            threadPoolCustom.executeRange(sampler.getTasks(), sampler::refineTask);
+            threadPoolCustom.waitUntilAllTasksFinished();
+            refineMillis = getTimeInMillis() - refineStart;
         }
-        return currentIteration;
+
+        mirror.copy(canvas, threadPoolCustom);
+        return mariani;
     }
 
-    static private void byRows(int current, int part) {
-        for (int y = current; y < current + part && y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                double pixel_x = dims[0] + ((double) x / width) * (dims[1] - dims[0]),
-                        pixel_y = dims[2] + ((double) y / height) * (dims[3] - dims[2]);
+    // Every render gets a pool and tasks for its thread count and
+    // granularity as -t and -g would; pool start-up and shutdown are not
+    // timed.
+    static private void sweep() throws Exception {
+        quiet = true;
+        mirror = RealAxisMirror.detect(engine, dims, height);
+        sweep.run((count, granularity) -> {
+            threads = count;
+            gran = granularity;
+            tasks = gran * threads;
+            ThreadPoolCustom threadPoolCustom = new ThreadPoolCustom(threads - 1, tasks, queueType);
+            long start = System.nanoTime();
+            render(threadPoolCustom);
+            long nanos = System.nanoTime() - start;
+            threadPoolCustom.shutdown(quiet);
+            return nanos;
+        }, System.out);
+    }
+
+    static private void dispatchBenchmark() throws Exception {
+        ThreadPoolCustom threadPoolCustom = new ThreadPoolCustom(threads - 1, dispatchTasks, queueType);
+        System.out.println("Dispatch benchmark: " + dispatchTasks + " tasks, " + (threads - 1)
+            + " workers, " + queueType.name().toLowerCase() + " queue.");
 
-                Complex c = new Complex(pixel_x, pixel_y);
+        for (int round = 1; round <= 10; ++round) {
+            long start = System.nanoTime();
+            threadPoolCustom.executeRange(dispatchTasks, k -> dispatchSink.increment());
+            threadPoolCustom.waitUntilAllTasksFinished();
+            long range = System.nanoTime() - start;
 
-                pixels[x][y] = generateIteration(c);
+            start = System.nanoTime();
+            for (int k = 0; k < dispatchTasks; ++k) {
+                threadPoolCustom.execute(dispatchSink::increment);
             }
+            threadPoolCustom.waitUntilAllTasksFinished();
+            long single = System.nanoTime() - start;
+
+            System.out.printf("Round %d: %.1f ns per task by range, %.1f ns per task one by one.%n", round,
+                (double) range / dispatchTasks, (double) single / dispatchTasks);
         }
+
+        threadPoolCustom.shutdown(quiet);
     }
 
-    static private void byCols(int current, int part) {
-        for (int x = current; x < current + part && x < width; ++x) {
-            for (int y = 0; y < height; ++y) {
-                double pixel_x = dims[0] + ((double) x / width) * (dims[1] - dims[0]),
-                        pixel_y = dims[2] + ((double) y / height) * (dims[3] - dims[2]);
+    static private IterationFile createCounts() throws IOException {
+        return rawPath == null ? null : IterationFile.create(rawPath, width, height, maxIterations, engine, dims, smooth);
+    }
 
-                Complex c = new Complex(pixel_x, pixel_y);
+    static private void recolor(IterationFile source, int[] colors) throws Exception {
+        long startTime = getTimeInMillis();
+        canvas = new PixelCanvas(width, height, colors);
+        source.recolor(canvas, colors, threads);
+        source.close();
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        encoder.write(canvas, pathName);
+        long endTime = getTimeInMillis();
+        System.out.println("Recolored " + recolorPath + " in " + (endTime - startTime) + "ms without iterating.");
+        System.out.println(encoder.report());
+    }
 
-                pixels[x][y] = generateIteration(c);
-            }
+    static private void cached(ThreadPoolCustom threadPoolCustom, IterationFile counts) throws Exception {
+        TileCache cache = new TileCache(cachePath);
+        TileRender render = new TileRender(cache, engine, maxIterations, dims, width, height, canvas);
+        long startTime = getTimeInMillis();
+        threadPoolCustom.executeRange(render.getTiles(), render::renderTile);
+        threadPoolCustom.waitUntilAllTasksFinished();
+        long endTime = getTimeInMillis();
+        threadPoolCustom.shutdown(quiet);
+        if (counts != null) {
+            counts.close();
+        }
+
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        encoder.write(canvas, pathName);
+
+        System.out.println("Total execution time is " + (endTime - startTime) + "ms.");
+        System.out.println(cache.report());
+        System.out.println(encoder.report());
+    }
+
+    static private void runPasses(ThreadPoolCustom threadPoolCustom, ProgressiveRender render) throws Exception {
+        render.start();
+        for (int pass = 0; pass < render.getPasses(); ++pass) {
+            final int current = pass;
+            threadPoolCustom.executeRange(render.getTasks(pass), k -> render.renderTask(current, k));
+            threadPoolCustom.waitUntilAllTasksFinished();
+            render.finishPass(pass, threadPoolCustom);
+        }
+    }
+
+    // The single pass for -v runs after the progressive one on the same
+    // pool, into a canvas of its own.
+    static private void progressive(ThreadPoolCustom threadPoolCustom, IterationFile counts, int[] colors) throws Exception {
+        ProgressiveRender render = new ProgressiveRender(canvas, engine, maxIterations, dims, width, height,
+            pathName, ProgressiveRender.PASSES);
+        runPasses(threadPoolCustom, render);
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        encoder.write(canvas, pathName);
+
+        ProgressiveRender single = null;
+        if (verify) {
+            single = new ProgressiveRender(new PixelCanvas(width, height, colors), engine, maxIterations, dims,
+                width, height, null, ProgressiveRender.SINGLE);
+            runPasses(threadPoolCustom, single);
+        }
+        threadPoolCustom.shutdown(quiet);
+        if (counts != null) {
+            counts.close();
+        }
+
+        System.out.println("Total execution time is " + render.getTotalMillis() + "ms.");
+        System.out.println(render.report());
+        System.out.println(encoder.report());
+        if (single != null) {
+            System.out.println(render.compare(single));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            System.out.println(PerturbationReference.report());
+        }
+    }
+
+    static private void zoom(int[] colors) throws Exception {
+        ThreadPoolCustom threadPoolCustom = new ThreadPoolCustom(threads - 1, tasks, queueType);
+        ZoomSequence sequence = new ZoomSequence(engine, maxIterations, dims, zoomDims, frames, width, height, colors);
+        sequence.run(pathName, threadPoolCustom, threads);
+        threadPoolCustom.shutdown(quiet);
+    }
+
+    static private void stream(int[] colors) throws Exception {
+        BandStream.resetPeakHeap();
+        long startTime = getTimeInMillis();
+
+        ThreadPoolCustom threadPoolCustom = new ThreadPoolCustom(threads - 1, tasks, queueType);
+        BandStream stream = new BandStream(engine, maxIterations, dims, width, height, bandLines, 2 * threads, colors);
+        IterationFile counts = createCounts();
+        stream.setCounts(counts);
+        stream.write(pathName, threadPoolCustom);
+        threadPoolCustom.waitUntilAllTasksFinished();
+        threadPoolCustom.shutdown(quiet);
+        if (counts != null) {
+            counts.close();
+        }
+
+        long endTime = getTimeInMillis();
+        System.out.println("Total execution time is " + (endTime - startTime) + "ms.");
+        System.out.println(stream.report());
+        if (MandelKernel.isInteriorChecks()) {
+            System.out.println(MandelKernel.shortCircuitedReport((long) width * height));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            System.out.println(PerturbationReference.report());
         }
     }
 
@@ -156,67 +490,135 @@ public class MandelWorldDynamicCustomThreadPool {
 
         addOptions(args);
 
-        int[] colors = new int[maxIterations];
-        for (int i = 0; i < maxIterations; ++i) {
-            colors[i] = Color.HSBtoRGB((100 + 1.7f * i) / 256, 0.77f, i / (i + 2.5f));
+        if (dispatchTasks > 0) {
+            dispatchBenchmark();
+            return;
         }
 
-        BufferedImage myImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        IterationFile source = null;
+        if (recolorPath != null) {
+            source = IterationFile.open(recolorPath);
+            width = source.getWidth();
+            height = source.getHeight();
+            maxIterations = source.getMaxIterations();
+            dims = source.getDims();
+        }
 
-        Graphics2D g2 = myImage.createGraphics();
-        g2.fillRect(0, 0, width, height);
+        if (zoomDims != null && engine.isOffset()) {
+            System.out.println("Zoom sequences iterate absolute coordinates, using the primitive engine.");
+            engine = MandelKernel.Engine.PRIMITIVE;
+        }
+        if (source == null && zoomDims == null) {
+            if (!engineGiven) {
+                engine = MandelKernel.Engine.forView(rectText, dims, width, height);
+            }
+            if (engine == MandelKernel.Engine.DOUBLEDOUBLE) {
+                dims = DoubleDoubleKernel.install(rectText, dims);
+            } else if (engine == MandelKernel.Engine.PERTURBATION) {
+                dims = PerturbationReference.install(rectText, dims, width, height, maxIterations);
+            }
+        }
 
-        long startTime = getTimeInMillis();
+        int[] colors = new int[maxIterations + 1];
+        for (int i = 0; i < maxIterations; ++i) {
+            colors[i] = Color.HSBtoRGB((100 + 1.7f * i) / 256, 0.77f, i / (i + 2.5f));
+        }
+        colors[maxIterations] = Color.BLACK.getRGB();
 
-        ThreadPoolCustom threadPoolCustom = new ThreadPoolCustom(threads - 1, tasks);
+        if (source != null) {
+            recolor(source, colors);
+            return;
+        }
 
-        int div = tasks;
-        int partRows = height / div + (height % div == 0 ? 0 : 1);
-        int partCols = width / div + (width % div == 0 ? 0 : 1);
-        final int part = byCols ? partCols : partRows;
-        for (int k = 0; k < div; ++k) {
-            final int current = k * part;
-            threadPoolCustom.execute(() -> {
-                if (byCols) {
-                    byCols(current, part);
-                } else {
-                    byRows(current, part);
-                }
-                increaseFinishedTasks();
-            });
+        if (zoomDims != null) {
+            zoom(colors);
+            return;
         }
 
-        threadPoolCustom.waitUntilAllTasksFinished();
-        threadPoolCustom.stop(quiet);
+        if (bandLines > 0) {
+            stream(colors);
+            return;
+        }
 
-        try {
-            while (numberOfFinishedTasks < tasks) {
-                Thread.sleep(20);
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        canvas = new PixelCanvas(width, height, colors);
+        if (sweep != null) {
+            sweep();
+            return;
         }
 
-        long endTime = getTimeInMillis();
+        IterationFile counts = createCounts();
+        canvas.setCounts(counts);
 
-        threadPoolCustom.killThreads();
+        ThreadPoolCustom threadPoolCustom = new ThreadPoolCustom(threads - 1, tasks, queueType);
 
-        for (int i = 0; i < width; ++i) {
-            for (int j = 0; j < height; ++j) {
-                if (pixels[i][j] == maxIterations) {
-                    myImage.setRGB(i, j, Color.BLACK.getRGB());
-                } else {
-                    myImage.setRGB(i, j, colors[pixels[i][j]]);
-                }
+        if (cachePath != null) {
+            cached(threadPoolCustom, counts);
+            return;
+        }
+
+        if (progressive) {
+            progressive(threadPoolCustom, counts, colors);
+            return;
+        }
+
+        mirror = RealAxisMirror.detect(engine, dims, height);
+        if (antialias != null || marianiSilver) {
+            canvas.keepIterations();
+        }
+        long startTime = 0, endTime = 0;
+        MarianiSilver mariani = null;
+        for (int render = 0; render < renders; ++render) {
+            MandelKernel.resetShortCircuited();
+            startTime = getTimeInMillis();
+            mariani = render(threadPoolCustom);
+            endTime = getTimeInMillis();
+            if (renders > 1) {
+                System.out.println("Render " + (render + 1) + " took " + (endTime - startTime) + "ms.");
             }
         }
 
+        threadPoolCustom.shutdown(quiet);
+        if (counts != null) {
+            counts.close();
+        }
+
+        long encodeStart = getTimeInMillis();
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
         try {
-            ImageIO.write(myImage, "png", new File(pathName));
+            encoder.write(canvas, pathName);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        long writtenTime = getTimeInMillis();
+
+        if (tracePath != null) {
+            TaskTrace.writeChromeTrace(tracePath);
+        }
 
         System.out.println("Total execution time is " + (endTime - startTime) + "ms.");
+        System.out.println(encoder.report());
+        System.out.println("Stages: compute and color " + (endTime - startTime) + " ms, encode and write "
+            + (writtenTime - encodeStart) + " ms, end to end " + (writtenTime - startTime) + " ms.");
+        if (MandelKernel.isInteriorChecks()) {
+            System.out.println(MandelKernel.shortCircuitedReport((long) width * height));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            System.out.println(PerturbationReference.report());
+        }
+        if (mirror.getMirroredRows() > 0) {
+            System.out.println(mirror.report());
+        }
+        if (sampler != null) {
+            System.out.println(sampler.report(refineMillis));
+        }
+        if (mariani != null) {
+            System.out.println(mariani.report((long) width * height));
+            if (verify) {
+                System.out.println("Verification against brute force: " + mariani.verify() + " mismatched pixels.");
+            }
+        }
+        if (tracePath != null) {
+            System.out.println(TaskTrace.report());
+        }
     }
 }
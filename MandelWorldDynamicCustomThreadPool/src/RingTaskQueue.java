@@ -0,0 +1,64 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class RingTaskQueue implements TaskQueue {
+    private final AtomicReferenceArray<Runnable> buffer;
+    private final AtomicLongArray sequence;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    protected final IdleWorkers idle = new IdleWorkers();
+
+    public RingTaskQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequence = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; ++i) {
+            sequence.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long difference = sequence.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.set(index, task);
+                    sequence.set(index, position + 1);
+                    idle.wakeOne();
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    public Runnable poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) (position & mask);
+            long difference = sequence.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    Runnable task = buffer.get(index);
+                    buffer.set(index, null);
+                    sequence.set(index, position + mask + 1);
+                    return task;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public Runnable take(int worker) throws InterruptedException {
+        return idle.await(this::poll);
+    }
+}
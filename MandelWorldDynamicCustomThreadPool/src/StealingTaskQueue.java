@@ -0,0 +1,51 @@
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class StealingTaskQueue implements TaskQueue {
+    private final Deque<Runnable>[] deques;
+    private final AtomicInteger next = new AtomicInteger();
+    private final IdleWorkers idle = new IdleWorkers();
+    private final LongAdder steals = new LongAdder();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StealingTaskQueue(int workers) {
+        this.deques = new Deque[Math.max(1, workers)];
+        for (int i = 0; i < deques.length; ++i) {
+            deques[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        deques[Math.floorMod(next.getAndIncrement(), deques.length)].addLast(task);
+        idle.wakeOne();
+        return true;
+    }
+
+    @Override
+    public Runnable take(int worker) throws InterruptedException {
+        return idle.await(() -> poll(worker));
+    }
+
+    public long getSteals() {
+        return steals.sum();
+    }
+
+    private Runnable poll(int worker) {
+        int own = Math.floorMod(worker, deques.length);
+        Runnable task = deques[own].pollFirst();
+        if (task != null) {
+            return task;
+        }
+        for (int i = 1; i < deques.length; ++i) {
+            task = deques[(own + i) % deques.length].pollLast();
+            if (task != null) {
+                steals.increment();
+                return task;
+            }
+        }
+        return null;
+    }
+}
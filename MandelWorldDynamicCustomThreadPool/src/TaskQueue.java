@@ -0,0 +1,42 @@
+import java.util.function.IntConsumer;
+
+public interface TaskQueue {
+
+    enum Type {
+        BLOCKING, RING, STEALING, COUNTER;
+
+        public static Type parse(String name) {
+            return Type.valueOf(name.trim().toUpperCase());
+        }
+
+        public TaskQueue create(int capacity, int workers) {
+            switch (this) {
+                case RING:
+                    return new RingTaskQueue(capacity);
+                case STEALING:
+                    return new StealingTaskQueue(workers);
+                case COUNTER:
+                    return new CounterTaskQueue(capacity);
+                default:
+                    return new BlockingTaskQueue(capacity);
+            }
+        }
+    }
+
+    boolean offer(Runnable task);
+
+    Runnable take(int worker) throws InterruptedException;
+
+    default void put(Runnable task) throws InterruptedException {
+        while (!offer(task)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    default boolean offerRange(int count, IntConsumer body) {
+        return false;
+    }
+}
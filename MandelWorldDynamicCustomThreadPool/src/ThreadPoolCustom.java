@@ -1,52 +1,162 @@
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
 
-public class ThreadPoolCustom {
-    private BlockingQueue<Runnable> taskQueue;
-    private List<WorkerDynamicCustomThreadPool> runnables = new ArrayList<>();
-    private boolean isStopped;
+public class ThreadPoolCustom implements Executor {
+    static final Runnable POISON = () -> { };
+
+    private final TaskQueue taskQueue;
+    private final List<WorkerDynamicCustomThreadPool> runnables = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean isStopped;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition allFinished = lock.newCondition();
+    private final AtomicLong pendingTasks = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
 
     public ThreadPoolCustom(int allThreadsCount, int allTasksCount) {
-        this.taskQueue = new ArrayBlockingQueue<>(allTasksCount);
+        this(allThreadsCount, allTasksCount, TaskQueue.Type.BLOCKING);
+    }
+
+    public ThreadPoolCustom(int allThreadsCount, int allTasksCount, TaskQueue.Type queueType) {
+        this.taskQueue = queueType.create(allTasksCount, allThreadsCount);
         this.isStopped = false;
 
         for (int i = 0; i < allThreadsCount; ++i) {
-            this.runnables.add(new WorkerDynamicCustomThreadPool(this.taskQueue));
+            this.runnables.add(new WorkerDynamicCustomThreadPool(this, this.taskQueue, i));
         }
         for (WorkerDynamicCustomThreadPool runnable : this.runnables) {
-            new Thread(runnable).start();
+            Thread thread = new Thread(runnable);
+            this.threads.add(thread);
+            thread.start();
         }
     }
 
-    public synchronized void execute(Runnable task) throws Exception {
-        if(this.isStopped) {
-            throw new IllegalStateException("ThreadPoolCustom has been stopped");
+    @Override
+    public void execute(Runnable task) {
+        checkRunning();
+        taskStarted();
+        if (this.runnables.isEmpty()) {
+            runTask(task);
+            return;
+        }
+        try {
+            this.taskQueue.put(task);
+        } catch (InterruptedException e) {
+            taskFinished();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a task", e);
+        }
+    }
+
+    public void executeRange(int count, IntConsumer body) {
+        checkRunning();
+        if (count <= 0) {
+            return;
+        }
+        addPending(count);
+        if (!this.runnables.isEmpty() && this.taskQueue.offerRange(count, body)) {
+            return;
+        }
+        addPending(-count);
+        for (int k = 0; k < count; ++k) {
+            final int index = k;
+            execute(() -> body.accept(index));
+        }
+    }
+
+    public boolean tryExecute(Runnable task) {
+        checkRunning();
+        taskStarted();
+        if (this.runnables.isEmpty() || !this.taskQueue.offer(task)) {
+            taskFinished();
+            return false;
+        }
+        return true;
+    }
+
+    public void waitUntilAllTasksFinished() throws InterruptedException, ExecutionException {
+        lock.lock();
+        try {
+            while (pendingTasks.get() > 0) {
+                allFinished.await();
+            }
+        } finally {
+            lock.unlock();
         }
 
-        this.taskQueue.offer(task);
+        Throwable cause = failure.getAndSet(null);
+        if (cause != null) {
+            throw new ExecutionException("Task failed in ThreadPoolCustom", cause);
+        }
     }
 
-    public synchronized void stop(boolean quiet) {
+    public void shutdown(boolean quiet) throws InterruptedException {
         this.isStopped = true;
-        for(WorkerDynamicCustomThreadPool runnable : this.runnables) {
-            runnable.doStop(quiet);
+        for (int i = 0; i < this.runnables.size(); ++i) {
+            this.taskQueue.put(POISON);
+        }
+        for (Thread thread : this.threads) {
+            thread.join();
+        }
+        if (!quiet) {
+            for (WorkerDynamicCustomThreadPool runnable : this.runnables) {
+                System.out.println(runnable.getCountTasks() + " tasks done by this thread.");
+            }
+            if (this.taskQueue instanceof StealingTaskQueue) {
+                System.out.println(((StealingTaskQueue) this.taskQueue).getSteals() + " tasks stolen between workers.");
+            }
+        }
+    }
+
+    void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        } finally {
+            taskFinished();
         }
     }
 
-    public synchronized void killThreads(){
-        for(WorkerDynamicCustomThreadPool runnable : this.runnables) {
-            runnable.interrupt();
+    void runIndex(IntConsumer body, int index) {
+        try {
+            body.accept(index);
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        } finally {
+            taskFinished();
         }
     }
 
-    public synchronized void waitUntilAllTasksFinished() {
-        while(!this.taskQueue.isEmpty()) {
+    private void checkRunning() {
+        if (this.isStopped) {
+            throw new IllegalStateException("ThreadPoolCustom has been stopped");
+        }
+    }
+
+    private void taskStarted() {
+        addPending(1);
+    }
+
+    private void taskFinished() {
+        addPending(-1);
+    }
+
+    private void addPending(long delta) {
+        if (pendingTasks.addAndGet(delta) == 0) {
+            lock.lock();
             try {
-                Thread.sleep(20);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                allFinished.signalAll();
+            } finally {
+                lock.unlock();
             }
         }
     }
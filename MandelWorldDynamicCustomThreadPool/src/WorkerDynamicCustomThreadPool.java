@@ -1,42 +1,43 @@
-import java.util.concurrent.BlockingQueue;
-
 public class WorkerDynamicCustomThreadPool implements Runnable {
 
-    private Thread thread = null;
-    private BlockingQueue<Runnable> taskQueue;
-    private boolean isStopped;
-    private int countTasks;
-
-    public void interrupt(){
-        this.thread.interrupt();
-    }
+    private final ThreadPoolCustom pool;
+    private final TaskQueue taskQueue;
+    private final int index;
+    private volatile int countTasks;
 
-    public WorkerDynamicCustomThreadPool(BlockingQueue<Runnable> queue) {
+    public WorkerDynamicCustomThreadPool(ThreadPoolCustom pool, TaskQueue queue, int index) {
+        this.pool = pool;
         this.taskQueue = queue;
-        this.isStopped = false;
+        this.index = index;
         this.countTasks = 0;
     }
 
     public void run() {
-        this.thread = Thread.currentThread();
-        while(!isStopped()) {
-            try{
-                Runnable runnable = (Runnable)taskQueue.take();
-                ++countTasks;
-                runnable.run();
-            } catch(Exception e) { }
-        }
-    }
-
-    public synchronized void doStop(boolean quiet) {
-        isStopped = true;
-
-        if(!quiet) {
-            System.out.println(countTasks + " tasks done by this thread.");
+        while (true) {
+            Runnable runnable;
+            try {
+                runnable = taskQueue.take(index);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (runnable == ThreadPoolCustom.POISON) {
+                return;
+            }
+            if (runnable instanceof CounterTaskQueue.Range) {
+                CounterTaskQueue.Range range = (CounterTaskQueue.Range) runnable;
+                int claimed = range.claim();
+                if (claimed >= 0) {
+                    ++countTasks;
+                    pool.runIndex(range.body, claimed);
+                }
+                continue;
+            }
+            ++countTasks;
+            pool.runTask(runnable);
         }
     }
 
-    public synchronized boolean isStopped() {
-        return isStopped;
+    public int getCountTasks() {
+        return countTasks;
     }
 }
@@ -0,0 +1,7 @@
+#!/bin/bash
+
+_CMD_JAVA=`which java`;
+
+$_CMD_JAVA -Xmx${HEAP:-8G} --add-modules jdk.incubator.vector -cp ./out/production/:./lib/commons-math3-3.6.1.jar:./lib/commons-cli-1.4.jar MandelWorldForkJoin "$@" 
+
+
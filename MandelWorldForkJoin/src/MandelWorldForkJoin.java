@@ -0,0 +1,573 @@
+import java.awt.*;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.cli.*;
+
+public class MandelWorldForkJoin {
+
+    protected static int width = 3840, height = 2160;
+    protected static int gran = 1;
+    protected static int maxIterations = 1024;
+    protected static double[] dims ={-0.6386,-0.5986,0.4456,0.4686};
+    protected static String pathName = "MandelWorldForkJoin.png";
+    protected static CostProbe probe;
+    protected static long threshold;
+    protected static PixelCanvas canvas;
+    protected static int threads = 1;
+    protected static boolean quiet = false, progressive = false, verify = false;
+    protected static int probeStep = 16;
+    protected static int bandLines = 0;
+    protected static String rawPath, recolorPath;
+    protected static boolean smooth = false;
+    protected static String cachePath;
+    protected static String rectText;
+    protected static double[] zoomDims;
+    protected static int frames = 30;
+    protected static MandelKernel.Engine engine = MandelKernel.Engine.PRIMITIVE;
+    protected static boolean engineGiven = false;
+    protected static RealAxisMirror mirror = RealAxisMirror.NONE;
+    protected static int[] antialias;
+    protected static ScalabilitySweep sweep;
+    protected static String tracePath;
+    protected static String batchPath;
+
+    private static final int LEAVES_PER_THREAD = 16;
+
+    static private void addOptions(String[] args) {
+        Options opt = new Options();
+        opt.addOption("s", "size", true, "size of image (default: 3840x2160)");
+        opt.addOption("r", "rect", true, "dimensions of area in the plane (default: -0.6386:-0.5986:0.4456:0.4686)");
+        opt.addOption("t", "threads", true, "number of threads (default: 1)");
+        opt.addOption("o", "out", true, "output path name (default: MandelWorldForkJoin.png)");
+        opt.addOption("q", "quiet", false, "quiet mode (default: false)");
+        opt.addOption("h", "help", false, "information about arguments (default: false)");
+        opt.addOption("g", "gran", true, "granularity, multiplies the number of leaf tiles per thread (default: 1)");
+        opt.addOption("p", "probe", true, "sample step of the low-resolution cost probe (default: 16)");
+        opt.addOption("i", "interior", false, "interior shortcuts: cardioid/bulb test and periodicity checking (default: false)");
+        opt.addOption("M", "no-mirror", false, "iterate every row instead of copying the rows mirrored across the real axis (default: false)");
+        opt.addOption("e", "engine", true, "iteration engine: primitive, complex, vector, double-double, perturbation (default: primitive, or chosen by pixel spacing)");
+        opt.addOption("a", "raw", true, "also write raw iteration counts to this file (default: off)");
+        opt.addOption("f", "fraction", false, "add smooth fractional escape times to the raw file (default: false)");
+        opt.addOption("u", "recolor", true, "color a raw iteration count file instead of rendering (default: off)");
+        opt.addOption("x", "cache", true, "reuse and store iteration tiles in this directory (default: off)");
+        opt.addOption("A", "antialias", true, "supersample pixels whose count differs from a neighbour by more than T on an NxN jittered grid, N or N:T (default: off, T: 1)");
+        opt.addOption("z", "zoom", true, "animate a zoom from the rect to this end rect, one PNG per frame (default: off)");
+        opt.addOption("y", "frames", true, "number of frames of the zoom animation (default: 30)");
+        opt.addOption("l", "lines", true, "stream the PNG in bands of this many lines instead of holding the whole image (default: off)");
+        opt.addOption("S", "sweep", true, "time renders for thread counts x granularities in one JVM and print CSV instead of writing the image, T1,T2,..:G1,G2,..[:repetitions[:warm-up renders]] (default: off, 5 repetitions, 3 warm-up renders)");
+        opt.addOption("T", "trace", true, "record every task and write a Chrome trace (about:tracing) JSON to this file, tasks are also JFR events (default: off)");
+        opt.addOption("B", "batch", true, "render every job of this file, one \"-r RECT -s WxH -o PATH\" per line with -r and -s defaulting to the options given, overlapping compute with color and encoding (default: off)");
+        opt.addOption("P", "progressive", false, "render at 1/8, 1/4, 1/2 and full resolution, writing a preview after each coarse pass (default: false)");
+        opt.addOption("v", "verify", false, "time a progressive render against a single pass (default: false)");
+
+        CommandLineParser parser = new DefaultParser();
+
+        try {
+            CommandLine cmd = parser.parse(opt, args);
+            if (cmd.hasOption("s")) {
+                String[] sz = cmd.getOptionValue("s").split("x");
+                try {
+                    width = Integer.parseInt(sz[0]);
+                    height = Integer.parseInt(sz[1]);
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(1);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(2);
+                }
+            }
+
+            if (cmd.hasOption("r")) {
+                rectText = cmd.getOptionValue("r");
+                String[] dim = rectText.split(":");
+                try {
+                    for (int j = 0; j < dim.length; ++j) {
+                        dims[j] = Double.parseDouble(dim[j]);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(3);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(4);
+                }
+            }
+
+            if (cmd.hasOption("t")) {
+                String workers = cmd.getOptionValue("t");
+                try {
+                    threads = Integer.parseInt(workers);
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(5);
+                }
+            }
+
+            if (cmd.hasOption("g")) {
+                try {
+                    gran = Integer.parseInt(cmd.getOptionValue("g"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(5);
+                }
+            }
+
+            if (cmd.hasOption("p")) {
+                try {
+                    probeStep = Integer.parseInt(cmd.getOptionValue("p"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(8);
+                }
+            }
+
+            if (cmd.hasOption("e")) {
+                try {
+                    engine = MandelKernel.Engine.parse(cmd.getOptionValue("e"));
+                    engineGiven = true;
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(7);
+                }
+            }
+
+            if (cmd.hasOption("z")) {
+                String[] dim = cmd.getOptionValue("z").split(":");
+                try {
+                    zoomDims = new double[4];
+                    for (int j = 0; j < zoomDims.length; ++j) {
+                        zoomDims[j] = Double.parseDouble(dim[j]);
+                    }
+                    frames = Integer.parseInt(cmd.getOptionValue("y", "30"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(14);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(15);
+                }
+            }
+
+            if (cmd.hasOption("l")) {
+                try {
+                    bandLines = Integer.parseInt(cmd.getOptionValue("l"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(10);
+                }
+            }
+
+            if (cmd.hasOption("o")) {
+                pathName = cmd.getOptionValue("o");
+            }
+
+            quiet = cmd.hasOption("q");
+            rawPath = cmd.getOptionValue("a");
+            smooth = cmd.hasOption("f");
+            recolorPath = cmd.getOptionValue("u");
+            cachePath = cmd.getOptionValue("x");
+
+            if (cmd.hasOption("A")) {
+                try {
+                    antialias = EdgeSupersampler.parse(cmd.getOptionValue("A"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(17);
+                }
+            }
+            MandelKernel.setInteriorChecks(cmd.hasOption("i"));
+            RealAxisMirror.setEnabled(!cmd.hasOption("M"));
+            progressive = cmd.hasOption("P");
+            verify = cmd.hasOption("v");
+            tracePath = cmd.getOptionValue("T");
+            batchPath = cmd.getOptionValue("B");
+            if (tracePath != null) {
+                TaskTrace.enable();
+            }
+
+            if (cmd.hasOption("S")) {
+                try {
+                    sweep = ScalabilitySweep.parse(cmd.getOptionValue("S"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(19);
+                }
+            }
+
+            if (cmd.hasOption("h")) {
+                HelpFormatter formatter = new HelpFormatter();
+                formatter.printHelp("./runMe.sh [OPTIONS]", opt);
+                System.exit(6);
+            }
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            System.exit(9);
+        }
+    }
+
+    private static ForkJoinPool createPool() {
+        AtomicInteger counter = new AtomicInteger();
+        return new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            int index = counter.getAndIncrement();
+            thread.setName(index < 10 ? "Thread_0" + index : "Thread_" + index);
+            return thread;
+        }, null, false);
+    }
+
+    private static IterationFile createCounts() {
+        try {
+            return rawPath == null ? null : IterationFile.create(rawPath, width, height, maxIterations, engine, dims, smooth);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(12);
+            return null;
+        }
+    }
+
+    private static void closeCounts(IterationFile counts) {
+        if (counts != null) {
+            try {
+                counts.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void recolor(IterationFile source, int[] colors) {
+        long start = System.currentTimeMillis();
+        canvas = new PixelCanvas(width, height, colors);
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        try {
+            source.recolor(canvas, colors, threads);
+            source.close();
+            encoder.write(canvas, pathName);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(13);
+        }
+        long end = System.currentTimeMillis();
+        System.out.println("Recolored " + recolorPath + " in " + (end - start) + " ms without iterating.");
+        System.out.println(encoder.report());
+    }
+
+    private static void zoom(int[] colors) {
+        ForkJoinPool pool = createPool();
+        ZoomSequence sequence = new ZoomSequence(engine, maxIterations, dims, zoomDims, frames, width, height, colors);
+        try {
+            sequence.run(pathName, pool, threads);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(16);
+        }
+        pool.shutdown();
+    }
+
+    private static void batch(int[] colors) {
+        ForkJoinPool pool = createPool();
+        try {
+            List<BatchRender.Job> jobs = BatchRender.read(batchPath, dims, width, height);
+            new BatchRender(engine, maxIterations, colors, threads).run(jobs, pool);
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            System.exit(21);
+        }
+        pool.shutdown();
+    }
+
+    private static void stream(int[] colors) {
+        BandStream.resetPeakHeap();
+        long start = System.currentTimeMillis();
+
+        ForkJoinPool pool = createPool();
+        BandStream stream = new BandStream(engine, maxIterations, dims, width, height, bandLines, 2 * threads, colors);
+        IterationFile counts = createCounts();
+        stream.setCounts(counts);
+        try {
+            stream.write(pathName, pool);
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(11);
+        }
+        pool.shutdown();
+        closeCounts(counts);
+
+        long end = System.currentTimeMillis();
+        System.out.println("Total execution time is " + (end - start) + " ms.");
+        System.out.println(stream.report());
+        if (MandelKernel.isInteriorChecks()) {
+            System.out.println(MandelKernel.shortCircuitedReport((long) width * height));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            System.out.println(PerturbationReference.report());
+        }
+    }
+
+    private static void cached(IterationFile counts) {
+        TileCache cache = new TileCache(cachePath);
+        TileRender render = new TileRender(cache, engine, maxIterations, dims, width, height, canvas);
+        ForkJoinPool pool = createPool();
+        long start = System.currentTimeMillis();
+        try {
+            render.render(pool);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        long end = System.currentTimeMillis();
+        pool.shutdown();
+        closeCounts(counts);
+
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        try {
+            encoder.write(canvas, pathName);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        System.out.println("Total execution time is " + (end - start) + " ms.");
+        System.out.println(cache.report());
+        System.out.println(encoder.report());
+    }
+
+    // The single pass for -v runs after the progressive one on the same
+    // pool, into a canvas of its own.
+    private static void progressive(IterationFile counts, int[] colors) {
+        ProgressiveRender render = new ProgressiveRender(canvas, engine, maxIterations, dims, width, height,
+            pathName, ProgressiveRender.PASSES);
+        ProgressiveRender single = verify ? new ProgressiveRender(new PixelCanvas(width, height, colors), engine,
+            maxIterations, dims, width, height, null, ProgressiveRender.SINGLE) : null;
+        ForkJoinPool pool = createPool();
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        try {
+            render.render(pool);
+            encoder.write(canvas, pathName);
+            if (single != null) {
+                single.render(pool);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(18);
+        }
+        pool.shutdown();
+        closeCounts(counts);
+
+        System.out.println("Total execution time is " + render.getTotalMillis() + " ms.");
+        System.out.println(render.report());
+        System.out.println(encoder.report());
+        if (single != null) {
+            System.out.println(render.compare(single));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            System.out.println(PerturbationReference.report());
+        }
+    }
+
+    // The cost probe is taken once; every render gets a pool and a split
+    // threshold for its thread count and granularity as -t and -g would.
+    // Pool start-up is not timed.
+    private static void sweep() {
+        mirror = RealAxisMirror.detect(engine, dims, height);
+        int top = mirror.getFrom(), bottom = Math.min(height, mirror.getTo());
+        probe = new CostProbe(engine, maxIterations, dims, width, height, probeStep);
+        long cost = probe.cost(0, top, width, bottom);
+        try {
+            sweep.run((count, granularity) -> {
+                threads = count;
+                gran = granularity;
+                threshold = Math.max(1, cost / ((long) threads * gran * LEAVES_PER_THREAD));
+                ForkJoinPool pool = createPool();
+                long start = System.nanoTime();
+                pool.invoke(new WorkerForkJoin(0, top, width, bottom));
+                mirror.copy(canvas, pool);
+                long nanos = System.nanoTime() - start;
+                pool.shutdown();
+                return nanos;
+            }, System.out);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(19);
+        }
+    }
+
+    public static void main(String[] args) {
+        addOptions(args);
+
+        IterationFile source = null;
+        if (recolorPath != null) {
+            try {
+                source = IterationFile.open(recolorPath);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                System.exit(12);
+            }
+            width = source.getWidth();
+            height = source.getHeight();
+            maxIterations = source.getMaxIterations();
+            dims = source.getDims();
+        }
+
+        if (zoomDims != null && engine.isOffset()) {
+            System.out.println("Zoom sequences iterate absolute coordinates, using the primitive engine.");
+            engine = MandelKernel.Engine.PRIMITIVE;
+        }
+        if (batchPath != null && engine.isOffset()) {
+            System.out.println("Batch jobs iterate absolute coordinates, using the primitive engine.");
+            engine = MandelKernel.Engine.PRIMITIVE;
+        }
+        if (source == null && zoomDims == null && batchPath == null) {
+            if (!engineGiven) {
+                engine = MandelKernel.Engine.forView(rectText, dims, width, height);
+            }
+            if (engine == MandelKernel.Engine.DOUBLEDOUBLE) {
+                dims = DoubleDoubleKernel.install(rectText, dims);
+            } else if (engine == MandelKernel.Engine.PERTURBATION) {
+                dims = PerturbationReference.install(rectText, dims, width, height, maxIterations);
+            }
+        }
+
+        int[] colors = new int[maxIterations + 1];
+
+        for (int j = 0; j < maxIterations; ++j) {
+         colors[j] = Color.HSBtoRGB(((100 + 1.7f*(float)Math.log(j)*(float)Math.sqrt(j)) / 256f), 0.77f,j / (j + 2.5f));
+        }
+        colors[maxIterations] = Color.BLACK.getRGB();
+
+        if (source != null) {
+            recolor(source, colors);
+            return;
+        }
+
+        if (zoomDims != null) {
+            zoom(colors);
+            return;
+        }
+
+        if (batchPath != null) {
+            batch(colors);
+            return;
+        }
+
+        if (bandLines > 0) {
+            stream(colors);
+            return;
+        }
+
+        canvas = new PixelCanvas(width, height, colors);
+        if (sweep != null) {
+            sweep();
+            return;
+        }
+
+        IterationFile counts = createCounts();
+        canvas.setCounts(counts);
+
+        if (cachePath != null) {
+            cached(counts);
+            return;
+        }
+
+        if (progressive) {
+            progressive(counts, colors);
+            return;
+        }
+
+        ForkJoinPool pool = createPool();
+
+        long start = System.currentTimeMillis();
+
+        mirror = RealAxisMirror.detect(engine, dims, height);
+        int top = mirror.getFrom(), bottom = Math.min(height, mirror.getTo());
+        if (antialias != null) {
+            canvas.keepIterations();
+        }
+        probe = new CostProbe(engine, maxIterations, dims, width, height, probeStep);
+        threshold = Math.max(1, probe.cost(0, top, width, bottom) / ((long) threads * gran * LEAVES_PER_THREAD));
+        MandelKernel.resetShortCircuited();
+
+        long probeEnd = System.currentTimeMillis();
+
+        pool.invoke(new WorkerForkJoin(0, top, width, bottom));
+
+        EdgeSupersampler sampler = null;
+        long refineStart = System.currentTimeMillis();
+        if (antialias != null) {
+            sampler = new EdgeSupersampler(canvas, engine, maxIterations, dims, width, height,
+                antialias[0], antialias[1], top, bottom);
+            try {
+                sampler.refine(pool);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        long refineEnd = System.currentTimeMillis();
+
+        try {
+            mirror.copy(canvas, pool);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        long end = System.currentTimeMillis();
+
+        long steals = pool.getStealCount();
+        pool.shutdown();
+        closeCounts(counts);
+
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        try {
+            encoder.write(canvas, pathName);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        long written = System.currentTimeMillis();
+
+        if (tracePath != null) {
+            try {
+                TaskTrace.writeChromeTrace(tracePath);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                System.exit(20);
+            }
+        }
+
+        PrintWriter out = new PrintWriter(System.out);
+        if (!quiet) {
+            for (WorkerStats stats : WorkerStats.all()) {
+                out.println(stats.name + " ready. Busy time was " + stats.busyNanos / 1000000 + " ms, "
+                    + stats.tiles + " tiles, " + stats.steals + " steals.");
+            }
+            out.println("Cost probe took " + (probeEnd - start) + " ms, split threshold is " + threshold
+                + " iterations, " + steals + " steals in the pool.");
+        }
+        out.printf("Total execution time is " + (end - start) + " ms.\n");
+        out.println(encoder.report());
+        out.println("Stages: compute and color " + (end - start) + " ms, encode and write " + (written - end)
+            + " ms, end to end " + (written - start) + " ms.");
+        if (MandelKernel.isInteriorChecks()) {
+            out.println(MandelKernel.shortCircuitedReport((long) width * height));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            out.println(PerturbationReference.report());
+        }
+        if (mirror.getMirroredRows() > 0) {
+            out.println(mirror.report());
+        }
+        if (sampler != null) {
+            out.println(sampler.report(refineEnd - refineStart));
+        }
+        if (tracePath != null) {
+            out.println(TaskTrace.report());
+        }
+
+        out.flush();
+        out.close();
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+public class WorkerForkJoin extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    private static final int MIN_TILE = 16;
+
+    private final int x0, y0, x1, y1;
+    private final Thread owner;
+
+    public WorkerForkJoin(int x0, int y0, int x1, int y1) {
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.owner = Thread.currentThread();
+    }
+
+    @Override
+    protected void compute() {
+        WorkerStats stats = WorkerStats.current();
+        if (owner instanceof ForkJoinWorkerThread && Thread.currentThread() != owner) {
+            ++stats.steals;
+        }
+
+        int w = x1 - x0, h = y1 - y0;
+        boolean small = w <= MIN_TILE && h <= MIN_TILE;
+        if (small || MandelWorldForkJoin.probe.cost(x0, y0, x1, y1) <= MandelWorldForkJoin.threshold) {
+            long start = System.nanoTime();
+            render();
+            stats.busyNanos += System.nanoTime() - start;
+            ++stats.tiles;
+            return;
+        }
+
+        if (w >= h) {
+            int mx = x0 + w / 2;
+            invokeAll(new WorkerForkJoin(x0, y0, mx, y1), new WorkerForkJoin(mx, y0, x1, y1));
+        } else {
+            int my = y0 + h / 2;
+            invokeAll(new WorkerForkJoin(x0, y0, x1, my), new WorkerForkJoin(x0, my, x1, y1));
+        }
+    }
+
+    private void render() {
+        int width = MandelWorldForkJoin.width, height = MandelWorldForkJoin.height;
+        double[] dims = MandelWorldForkJoin.dims;
+        int count = x1 - x0;
+        TaskTrace.Span span = TaskTrace.start();
+        long iterations = 0;
+        double[] re = new double[count], im = new double[count];
+        int[] line = new int[count];
+        MandelKernel.fillAxis(re, x0, count, dims[0], dims[1], width);
+        for (int y = y0; y < y1; ++y) {
+            Arrays.fill(im, dims[2] + ((double) y / height) * (dims[3] - dims[2]));
+            MandelKernel.generateIterations(MandelWorldForkJoin.engine, re, im, line, count,
+                MandelWorldForkJoin.maxIterations);
+            MandelWorldForkJoin.canvas.setRow(x0, y, line, count);
+            if (span != null) {
+                iterations += TaskTrace.sum(line, count);
+            }
+        }
+        if (span != null) {
+            span.finish("tile " + x0 + "," + y0 + "-" + x1 + "," + y1, (long) count * (y1 - y0), iterations);
+        }
+    }
+}
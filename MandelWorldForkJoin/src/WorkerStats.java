@@ -0,0 +1,27 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class WorkerStats {
+
+    private static final List<WorkerStats> all = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<WorkerStats> local = ThreadLocal.withInitial(() -> {
+        WorkerStats stats = new WorkerStats(Thread.currentThread().getName());
+        all.add(stats);
+        return stats;
+    });
+
+    final String name;
+    long steals, tiles, busyNanos;
+
+    private WorkerStats(String name) {
+        this.name = name;
+    }
+
+    public static WorkerStats current() {
+        return local.get();
+    }
+
+    public static List<WorkerStats> all() {
+        return all;
+    }
+}
@@ -1,7 +1,4 @@
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 
@@ -16,9 +13,26 @@ public class MandelWorldStatic {
     protected static int taskPixWidth = width / cols, taskPixHeight = height / rows;
     protected static String pathName = "MandelWorldStatic.png";
     protected static Thread[] workers;
-    protected static int[][] pixels = new int[width][height];
+    protected static PixelCanvas canvas;
     protected static int threads = 1;
     protected static boolean quiet = false, byCols = false;
+    protected static boolean marianiSilver = false, verify = false, progressive = false;
+    protected static MarianiSilver mariani;
+    protected static boolean balanced = false;
+    protected static int probeStep = 16;
+    protected static int bandLines = 0;
+    protected static String rawPath, recolorPath;
+    protected static boolean smooth = false;
+    protected static String cachePath;
+    protected static String rectText;
+    protected static int[] bounds;
+    protected static long[] threadTimes;
+    protected static MandelKernel.Engine engine = MandelKernel.Engine.PRIMITIVE;
+    protected static boolean engineGiven = false;
+    protected static RealAxisMirror mirror = RealAxisMirror.NONE;
+    protected static int[] antialias;
+    protected static ScalabilitySweep sweep;
+    protected static String tracePath;
 
     static private void addOptions(String[] args) {
         Options opt = new Options();
@@ -30,6 +44,22 @@ public class MandelWorldStatic {
         opt.addOption("h", "help", false, "information about arguments (default: false)");
         opt.addOption("c", "cols", false, "decomposition by cols (default: false)");
         opt.addOption("g", "gran", true, "granularity (default: 1)");
+        opt.addOption("i", "interior", false, "interior shortcuts: cardioid/bulb test and periodicity checking (default: false)");
+        opt.addOption("M", "no-mirror", false, "iterate every row instead of copying the rows mirrored across the real axis (default: false)");
+        opt.addOption("m", "mariani", false, "Mariani-Silver border tracing, fills uniform rectangles (default: false)");
+        opt.addOption("v", "verify", false, "compare Mariani-Silver result against brute force, or time a progressive render against a single pass (default: false)");
+        opt.addOption("b", "balanced", false, "one strip per thread, sized by a low-resolution cost preview (default: false)");
+        opt.addOption("p", "probe", true, "sample step of the low-resolution cost preview (default: 16)");
+        opt.addOption("e", "engine", true, "iteration engine: primitive, complex, vector, double-double, perturbation (default: primitive, or chosen by pixel spacing)");
+        opt.addOption("a", "raw", true, "also write raw iteration counts to this file (default: off)");
+        opt.addOption("f", "fraction", false, "add smooth fractional escape times to the raw file (default: false)");
+        opt.addOption("u", "recolor", true, "color a raw iteration count file instead of rendering (default: off)");
+        opt.addOption("x", "cache", true, "reuse and store iteration tiles in this directory (default: off)");
+        opt.addOption("A", "antialias", true, "supersample pixels whose count differs from a neighbour by more than T on an NxN jittered grid, N or N:T (default: off, T: 1)");
+        opt.addOption("l", "lines", true, "stream the PNG in bands of this many lines instead of holding the whole image (default: off)");
+        opt.addOption("S", "sweep", true, "time renders for thread counts x granularities in one JVM and print CSV instead of writing the image, T1,T2,..:G1,G2,..[:repetitions[:warm-up renders]] (default: off, 5 repetitions, 3 warm-up renders)");
+        opt.addOption("T", "trace", true, "record every task and write a Chrome trace (about:tracing) JSON to this file, tasks are also JFR events (default: off)");
+        opt.addOption("P", "progressive", false, "render at 1/8, 1/4, 1/2 and full resolution, writing a preview after each coarse pass (default: false)");
 
         CommandLineParser parser = new DefaultParser();
 
@@ -42,7 +72,6 @@ public class MandelWorldStatic {
                     height = Integer.parseInt(sz[1]);
                     taskPixWidth = width / cols;
                     taskPixHeight = height / rows;
-                    pixels = new int[width][height];
                 } catch (NumberFormatException e) {
                     System.out.println(e.getMessage());
                     System.exit(1);
@@ -53,10 +82,11 @@ public class MandelWorldStatic {
             }
 
             if (cmd.hasOption("r")) {
-                String[] dim = cmd.getOptionValue("r").split(":");
+                rectText = cmd.getOptionValue("r");
+                String[] dim = rectText.split(":");
                 try {
                     for (int j = 0; j < dim.length; ++j) {
-                        dims[j] = Float.parseFloat(dim[j]);
+                        dims[j] = Double.parseDouble(dim[j]);
                     }
                 } catch (NumberFormatException e) {
                     System.out.println(e.getMessage());
@@ -99,11 +129,71 @@ public class MandelWorldStatic {
                 }
             }
 
+            if (cmd.hasOption("e")) {
+                try {
+                    engine = MandelKernel.Engine.parse(cmd.getOptionValue("e"));
+                    engineGiven = true;
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(7);
+                }
+            }
+
             if (cmd.hasOption("o")) {
                 pathName = cmd.getOptionValue("o");
             }
 
             quiet = cmd.hasOption("q");
+            rawPath = cmd.getOptionValue("a");
+            smooth = cmd.hasOption("f");
+            recolorPath = cmd.getOptionValue("u");
+            cachePath = cmd.getOptionValue("x");
+
+            if (cmd.hasOption("A")) {
+                try {
+                    antialias = EdgeSupersampler.parse(cmd.getOptionValue("A"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(14);
+                }
+            }
+            MandelKernel.setInteriorChecks(cmd.hasOption("i"));
+            RealAxisMirror.setEnabled(!cmd.hasOption("M"));
+            marianiSilver = cmd.hasOption("m");
+            verify = cmd.hasOption("v");
+            progressive = cmd.hasOption("P");
+            tracePath = cmd.getOptionValue("T");
+            if (tracePath != null) {
+                TaskTrace.enable();
+            }
+
+            if (cmd.hasOption("S")) {
+                try {
+                    sweep = ScalabilitySweep.parse(cmd.getOptionValue("S"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(16);
+                }
+            }
+            balanced = cmd.hasOption("b");
+
+            if (cmd.hasOption("p")) {
+                try {
+                    probeStep = Integer.parseInt(cmd.getOptionValue("p"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(8);
+                }
+            }
+
+            if (cmd.hasOption("l")) {
+                try {
+                    bandLines = Integer.parseInt(cmd.getOptionValue("l"));
+                } catch (NumberFormatException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(10);
+                }
+            }
 
             if (cmd.hasOption("h")) {
                 HelpFormatter formatter = new HelpFormatter();
@@ -116,22 +206,212 @@ public class MandelWorldStatic {
         }
     }
 
-    public static void main(String[] args) {
-        addOptions(args);
+    // Each thread renders bands j, j + threads, j + 2 * threads, ... while the
+    // main thread encodes them in order, so only 2 * threads bands are live.
+    private static void stream(int[] colors) {
+        BandStream.resetPeakHeap();
+        long start = System.currentTimeMillis();
 
-        int[] colors = new int[maxIterations];
+        BandStream stream = new BandStream(engine, maxIterations, dims, width, height, bandLines, 2 * threads, colors);
+        IterationFile counts = createCounts();
+        stream.setCounts(counts);
+        workers = new Thread[threads];
+        for (int j = 0; j < threads; ++j) {
+            int first = j;
+            workers[j] = new Thread(() -> {
+                try {
+                    for (int band = first; band < stream.getBands(); band += threads) {
+                        stream.renderBand(band);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            workers[j].start();
+        }
 
-        for (int j = 0; j < maxIterations; ++j) {
-         colors[j] = Color.HSBtoRGB(((100 + 1.7f*(float)Math.log(j)*(float)Math.sqrt(j)) / 256f), 0.77f,j / (j + 2.5f));
+        try {
+            stream.write(pathName, null);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(11);
         }
+        closeCounts(counts);
 
-        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        long end = System.currentTimeMillis();
+        System.out.println("Total execution time is " + (end - start) + " ms.");
+        System.out.println(stream.report());
+        if (MandelKernel.isInteriorChecks()) {
+            System.out.println(MandelKernel.shortCircuitedReport((long) width * height));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            System.out.println(PerturbationReference.report());
+        }
+    }
+
+    private static IterationFile createCounts() {
+        try {
+            return rawPath == null ? null : IterationFile.create(rawPath, width, height, maxIterations, engine, dims, smooth);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(12);
+            return null;
+        }
+    }
+
+    private static void closeCounts(IterationFile counts) {
+        if (counts != null) {
+            try {
+                counts.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
-        Graphics2D graphic = img.createGraphics();
-        graphic.fillRect(0, 0, width, height);
+    private static void recolor(IterationFile source, int[] colors) {
+        long start = System.currentTimeMillis();
+        canvas = new PixelCanvas(width, height, colors);
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        try {
+            source.recolor(canvas, colors, threads);
+            source.close();
+            encoder.write(canvas, pathName);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(13);
+        }
+        long end = System.currentTimeMillis();
+        System.out.println("Recolored " + recolorPath + " in " + (end - start) + " ms without iterating.");
+        System.out.println(encoder.report());
+    }
 
+    // Tiles are dealt out round-robin, tile j to thread j % threads, the
+    // same static schedule the strips use.
+    private static void cached(IterationFile counts) {
+        TileCache cache = new TileCache(cachePath);
+        TileRender render = new TileRender(cache, engine, maxIterations, dims, width, height, canvas);
         long start = System.currentTimeMillis();
 
+        workers = new Thread[threads];
+        for (int j = 0; j < threads; ++j) {
+            int first = j;
+            workers[j] = new Thread(() -> {
+                for (int tile = first; tile < render.getTiles(); tile += threads) {
+                    render.renderTile(tile);
+                }
+            });
+            workers[j].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        long end = System.currentTimeMillis();
+        closeCounts(counts);
+
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        try {
+            encoder.write(canvas, pathName);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        System.out.println("Total execution time is " + (end - start) + " ms.");
+        System.out.println(cache.report());
+        System.out.println(encoder.report());
+    }
+
+    // Refinement tasks are dealt out round-robin like the tiles above.
+    private static EdgeSupersampler refine() {
+        EdgeSupersampler sampler = new EdgeSupersampler(canvas, engine, maxIterations, dims, width, height,
+            antialias[0], antialias[1], mirror.getFrom(), mirror.getTo());
+        workers = new Thread[threads];
+        for (int j = 0; j < threads; ++j) {
+            int first = j;
+            workers[j] = new Thread(() -> {
+                for (int task = first; task < sampler.getTasks(); task += threads) {
+                    sampler.refineTask(task);
+                }
+            });
+            workers[j].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        return sampler;
+    }
+
+    // Every pass deals its tasks out round-robin to fresh threads and joins
+    // them; previews are encoded on the main thread, as they are small.
+    private static void runPasses(ProgressiveRender render) throws IOException {
+        render.start();
+        for (int pass = 0; pass < render.getPasses(); ++pass) {
+            int current = pass;
+            workers = new Thread[threads];
+            for (int j = 0; j < threads; ++j) {
+                int first = j;
+                workers[j] = new Thread(() -> {
+                    for (int task = first; task < render.getTasks(current); task += threads) {
+                        render.renderTask(current, task);
+                    }
+                });
+                workers[j].start();
+            }
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            render.finishPass(pass, Runnable::run);
+        }
+    }
+
+    // The single pass for -v runs after the progressive one, into a canvas
+    // of its own.
+    private static void progressive(IterationFile counts, int[] colors) {
+        ProgressiveRender render = new ProgressiveRender(canvas, engine, maxIterations, dims, width, height,
+            pathName, ProgressiveRender.PASSES);
+        ProgressiveRender single = verify ? new ProgressiveRender(new PixelCanvas(width, height, colors), engine,
+            maxIterations, dims, width, height, null, ProgressiveRender.SINGLE) : null;
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        try {
+            runPasses(render);
+            encoder.write(canvas, pathName);
+            if (single != null) {
+                runPasses(single);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(15);
+        }
+        closeCounts(counts);
+
+        System.out.println("Total execution time is " + render.getTotalMillis() + " ms.");
+        System.out.println(render.report());
+        System.out.println(encoder.report());
+        if (single != null) {
+            System.out.println(render.compare(single));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            System.out.println(PerturbationReference.report());
+        }
+    }
+
+    private static void runWorkers() {
         workers = new Thread[threads];
         for (int j = 1; j < threads; ++j) {
             WorkerStatic r = new WorkerStatic(j, quiet, maxIterations, width, height,
@@ -151,27 +431,197 @@ public class MandelWorldStatic {
                 e.printStackTrace();
             }
         }
+    }
 
-        long end = System.currentTimeMillis();
+    // Every render deals out strips for its thread count and granularity
+    // as -t and -g would, and is timed up to the mirror copy.
+    private static void sweep() {
+        quiet = true;
+        mirror = RealAxisMirror.detect(engine, dims, height);
+        try {
+            sweep.run((count, gran) -> {
+                threads = count;
+                rows = byCols ? 1 : gran * threads;
+                cols = byCols ? gran * threads : 1;
+                tasks = rows * cols;
+                taskPixWidth = width / cols;
+                taskPixHeight = height / rows;
+                threadTimes = new long[threads];
+                long start = System.nanoTime();
+                runWorkers();
+                mirror.copy(canvas, Runnable::run);
+                return System.nanoTime() - start;
+            }, System.out);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(16);
+        }
+    }
 
-        for (int x = 0; x < width; ++x) {
-            for (int y = 0; y < height; ++y) {
-                if (pixels[x][y] < maxIterations) {
-                    img.setRGB(x, y, colors[pixels[x][y]]);
-                    continue;
-                }
-                img.setRGB(x, y, Color.BLACK.getRGB());
+    public static void main(String[] args) {
+        addOptions(args);
+
+        IterationFile source = null;
+        if (recolorPath != null) {
+            try {
+                source = IterationFile.open(recolorPath);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                System.exit(12);
+            }
+            width = source.getWidth();
+            height = source.getHeight();
+            maxIterations = source.getMaxIterations();
+            dims = source.getDims();
+        }
+
+        if (source == null) {
+            if (!engineGiven) {
+                engine = MandelKernel.Engine.forView(rectText, dims, width, height);
+            }
+            if (engine == MandelKernel.Engine.DOUBLEDOUBLE) {
+                dims = DoubleDoubleKernel.install(rectText, dims);
+            } else if (engine == MandelKernel.Engine.PERTURBATION) {
+                dims = PerturbationReference.install(rectText, dims, width, height, maxIterations);
             }
         }
 
+        int[] colors = new int[maxIterations + 1];
+
+        for (int j = 0; j < maxIterations; ++j) {
+         colors[j] = Color.HSBtoRGB(((100 + 1.7f*(float)Math.log(j)*(float)Math.sqrt(j)) / 256f), 0.77f,j / (j + 2.5f));
+        }
+        colors[maxIterations] = Color.BLACK.getRGB();
+
+        if (source != null) {
+            recolor(source, colors);
+            return;
+        }
+
+        if (bandLines > 0) {
+            stream(colors);
+            return;
+        }
+
+        canvas = new PixelCanvas(width, height, colors);
+        if (sweep != null) {
+            sweep();
+            return;
+        }
+
+        IterationFile counts = createCounts();
+        canvas.setCounts(counts);
+
+        if (cachePath != null) {
+            cached(counts);
+            return;
+        }
+
+        if (progressive) {
+            progressive(counts, colors);
+            return;
+        }
+
+        if (antialias != null || marianiSilver) {
+            canvas.keepIterations();
+        }
+        mirror = RealAxisMirror.detect(engine, dims, height);
+        if (marianiSilver) {
+            mariani = new MarianiSilver(canvas, engine, maxIterations, dims, width, height, Runnable::run);
+            mariani.setBand(mirror.getFrom(), mirror.getTo());
+        }
+
+        long start = System.currentTimeMillis();
+
+        threadTimes = new long[threads];
+        CostProbe probe = null;
+        double nanosPerIteration = 0;
+        if (balanced) {
+            long probeStart = System.nanoTime();
+            probe = new CostProbe(engine, maxIterations, dims, width, height, probeStep);
+            long probeNanos = System.nanoTime() - probeStart;
+            long sampled = probe.total() / ((long) probe.getStep() * probe.getStep());
+            nanosPerIteration = sampled == 0 ? 0 : (double) probeNanos / sampled;
+            bounds = probe.partition(threads, byCols, mirror.getFrom(), Math.min(height, mirror.getTo()));
+            MandelKernel.resetShortCircuited();
+        }
+
+        runWorkers();
+
+        EdgeSupersampler sampler = null;
+        long refineStart = System.currentTimeMillis();
+        if (antialias != null) {
+            sampler = refine();
+        }
+        long refineEnd = System.currentTimeMillis();
+
         try {
-            ImageIO.write(img, "png", new File(pathName));
+            mirror.copy(canvas, Runnable::run);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        long end = System.currentTimeMillis();
+        closeCounts(counts);
+
+        ParallelPngEncoder encoder = new ParallelPngEncoder(threads);
+        try {
+            encoder.write(canvas, pathName);
         } catch (IOException e) {
             e.printStackTrace();
         }
 
+        long written = System.currentTimeMillis();
+
+        if (tracePath != null) {
+            try {
+                TaskTrace.writeChromeTrace(tracePath);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                System.exit(17);
+            }
+        }
+
         PrintWriter out = new PrintWriter(System.out);
         out.printf("Total execution time is " + (end - start) + " ms.\n");
+        out.println(encoder.report());
+        out.println("Stages: compute and color " + (end - start) + " ms, encode and write " + (written - end)
+            + " ms, end to end " + (written - start) + " ms.");
+        if (MandelKernel.isInteriorChecks()) {
+            out.println(MandelKernel.shortCircuitedReport((long) width * height));
+        }
+        if (engine == MandelKernel.Engine.PERTURBATION) {
+            out.println(PerturbationReference.report());
+        }
+        if (mirror.getMirroredRows() > 0) {
+            out.println(mirror.report());
+        }
+        if (sampler != null) {
+            out.println(sampler.report(refineEnd - refineStart));
+        }
+
+        if (bounds != null) {
+            long total = probe.total(), actualTotal = 0;
+            for (long time : threadTimes) {
+                actualTotal += time;
+            }
+            for (int j = 0; j < threads; ++j) {
+                long cost = byCols ? probe.cost(bounds[j], 0, bounds[j + 1], height)
+                    : probe.cost(0, bounds[j], width, bounds[j + 1]);
+                out.printf("Thread_%02d %s %d-%d: predicted %.0f ms (%.1f%%), actual %d ms (%.1f%%).%n", j,
+                    byCols ? "cols" : "rows", bounds[j], bounds[j + 1], cost * nanosPerIteration / 1e6,
+                    100.0 * cost / Math.max(1, total), threadTimes[j], 100.0 * threadTimes[j] / Math.max(1, actualTotal));
+            }
+        }
+        if (mariani != null) {
+            out.println(mariani.report((long) width * height));
+            if (verify) {
+                out.println("Verification against brute force: " + mariani.verify() + " mismatched pixels.");
+            }
+        }
+        if (tracePath != null) {
+            out.println(TaskTrace.report());
+        }
 
         out.flush();
         out.close();
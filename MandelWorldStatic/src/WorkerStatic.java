@@ -1,4 +1,4 @@
-import org.apache.commons.math3.complex.Complex;
+import java.util.Arrays;
 
 public class WorkerStatic implements java.lang.Runnable {
 
@@ -7,6 +7,8 @@ public class WorkerStatic implements java.lang.Runnable {
     private int maxIterations;
     private int width, height;
     private double[] dims = MandelWorldStatic.dims;
+    private MandelKernel.Engine engine = MandelWorldStatic.engine;
+    private RealAxisMirror mirror = MandelWorldStatic.mirror;
     private int rows, cols;
     private int taskWidth, taskHeight, tasks, threads;
 
@@ -27,54 +29,116 @@ public class WorkerStatic implements java.lang.Runnable {
         this.threads = threads;
     }
 
-    private Complex calculateNext(Complex z, Complex c) {
-        return z.multiply(z).add(c);
-    }
-
-    private int generateIteration(Complex c) {
-        Complex z = new Complex(0, 0);
-
-        int currentIteration = 0;
-
-        while (z.abs() <= 2 && currentIteration < maxIterations) {
-            z = calculateNext(z, c);
-            ++currentIteration;
-        }
-        return currentIteration;
+    private void generateLine(double[] re, double[] im, int[] out, int count) {
+        MandelKernel.generateIterations(engine, re, im, out, count, maxIterations);
     }
 
     public void byRows() {
+        double[] re = new double[taskWidth], im = new double[taskWidth];
+        int[] line = new int[taskWidth];
         for (int task = indexThread; task < tasks; task += threads) {
+            TaskTrace.Span span = TaskTrace.start();
+            long pixels = 0, iterations = 0;
             int p = (task % rows) * taskHeight;
+            int q = (task / rows) * taskWidth;
+            MandelKernel.fillAxis(re, q, taskWidth, dims[0], dims[1], width);
             for (int x = p; x < p + taskHeight; ++x) {
-                int q = (task / rows) * taskWidth;
-                for (int y = q; y < q + taskWidth; ++y) {
-                    double pixel_x = dims[2] + ((double) x / height) * (dims[3] - dims[2]),
-                        pixel_y = dims[0] + ((double) y / width) * (dims[1] - dims[0]);
-
-                    Complex c = new Complex(pixel_y, pixel_x);
-
-                    MandelWorldStatic.pixels[y][x] = generateIteration(c);
+                if (mirror.isMirrored(x)) {
+                    continue;
+                }
+                Arrays.fill(im, dims[2] + ((double) x / height) * (dims[3] - dims[2]));
+                generateLine(re, im, line, taskWidth);
+                MandelWorldStatic.canvas.setRow(q, x, line, taskWidth);
+                if (span != null) {
+                    pixels += taskWidth;
+                    iterations += TaskTrace.sum(line, taskWidth);
                 }
             }
+            if (span != null) {
+                span.finish("task " + task + " rows " + p + "-" + (p + taskHeight), pixels, iterations);
+            }
+        }
+    }
+
+    public void byRectangles() {
+        for (int task = indexThread; task < tasks; task += threads) {
+            if (byCols) {
+                int p = (task % cols) * taskWidth;
+                int q = (task / cols) * taskHeight;
+                MandelWorldStatic.mariani.submit(p, q, p + taskWidth, q + taskHeight);
+            } else {
+                int p = (task % rows) * taskHeight;
+                int q = (task / rows) * taskWidth;
+                MandelWorldStatic.mariani.submit(q, p, q + taskWidth, p + taskHeight);
+            }
         }
     }
 
     public void byCols() {
+        double[] re = new double[taskHeight], im = new double[taskHeight];
+        int[] line = new int[taskHeight];
         for (int task = indexThread; task < tasks; task += threads) {
             int p = (task % cols) * taskWidth;
+            int q = Math.max((task / cols) * taskHeight, mirror.getFrom());
+            int count = Math.min((task / cols) * taskHeight + taskHeight, mirror.getTo()) - q;
+            if (count <= 0) {
+                continue;
+            }
+            TaskTrace.Span span = TaskTrace.start();
+            long iterations = 0;
+            MandelKernel.fillAxis(im, q, count, dims[2], dims[3], height);
             for (int x = p; x < p + taskWidth; ++x) {
-                int q = (task / cols) * taskHeight;
-                for (int y = q; y < q + taskHeight; ++y) {
-                    double pixel_x = dims[0] + ((double) x / width) * (dims[1] - dims[0]),
-                        pixel_y = dims[2] + ((double) y / height) * (dims[3] - dims[2]);
-
-                    Complex c = new Complex(pixel_x, pixel_y);
+                Arrays.fill(re, dims[0] + ((double) x / width) * (dims[1] - dims[0]));
+                generateLine(re, im, line, count);
+                MandelWorldStatic.canvas.setColumn(x, q, line, count);
+                if (span != null) {
+                    iterations += TaskTrace.sum(line, count);
+                }
+            }
+            if (span != null) {
+                span.finish("task " + task + " cols " + p + "-" + (p + taskWidth), (long) taskWidth * count, iterations);
+            }
+        }
+    }
 
-                    MandelWorldStatic.pixels[x][y] = generateIteration(c);
+    public void byBalanced() {
+        int from = MandelWorldStatic.bounds[indexThread], to = MandelWorldStatic.bounds[indexThread + 1];
+        TaskTrace.Span span = TaskTrace.start();
+        long pixels = 0, iterations = 0;
+        if (byCols) {
+            int top = mirror.getFrom(), count = Math.min(height, mirror.getTo()) - top;
+            double[] re = new double[count], im = new double[count];
+            int[] line = new int[count];
+            MandelKernel.fillAxis(im, top, count, dims[2], dims[3], height);
+            for (int x = from; x < to; ++x) {
+                Arrays.fill(re, dims[0] + ((double) x / width) * (dims[1] - dims[0]));
+                generateLine(re, im, line, count);
+                MandelWorldStatic.canvas.setColumn(x, top, line, count);
+                if (span != null) {
+                    pixels += count;
+                    iterations += TaskTrace.sum(line, count);
+                }
+            }
+        } else {
+            double[] re = new double[width], im = new double[width];
+            int[] line = new int[width];
+            MandelKernel.fillAxis(re, 0, width, dims[0], dims[1], width);
+            for (int y = from; y < to; ++y) {
+                if (mirror.isMirrored(y)) {
+                    continue;
+                }
+                Arrays.fill(im, dims[2] + ((double) y / height) * (dims[3] - dims[2]));
+                generateLine(re, im, line, width);
+                MandelWorldStatic.canvas.setRow(0, y, line, width);
+                if (span != null) {
+                    pixels += width;
+                    iterations += TaskTrace.sum(line, width);
                 }
             }
         }
+        if (span != null) {
+            span.finish("balanced " + (byCols ? "cols " : "rows ") + from + "-" + to, pixels, iterations);
+        }
     }
 
     @Override
@@ -89,15 +153,20 @@ public class WorkerStatic implements java.lang.Runnable {
 
         long startTime = System.currentTimeMillis();
 
-        if (byCols) {
+        if (MandelWorldStatic.mariani != null) {
+            byRectangles();
+        } else if (MandelWorldStatic.bounds != null) {
+            byBalanced();
+        } else if (byCols) {
             byCols();
         } else {
             byRows();
         }
 
-        if (!quiet) {
-            long endTime = System.currentTimeMillis();
+        long endTime = System.currentTimeMillis();
+        MandelWorldStatic.threadTimes[indexThread] = endTime - startTime;
 
+        if (!quiet) {
             if (indexThread < 10) {
                 System.out.println("Thread_0" + indexThread + " ready. Execution time was " + (endTime - startTime) + " ms.");
             } else {